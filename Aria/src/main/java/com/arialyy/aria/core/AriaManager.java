@@ -23,7 +23,10 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import com.arialyy.aria.core.command.ICmd;
+import com.arialyy.aria.core.common.HostLimiter;
+import com.arialyy.aria.core.common.HttpConnectionPool;
 import com.arialyy.aria.core.common.QueueMod;
+import com.arialyy.aria.core.common.SpeedLimiter;
 import com.arialyy.aria.core.download.DownloadEntity;
 import com.arialyy.aria.core.download.DownloadReceiver;
 import com.arialyy.aria.core.download.DownloadTaskEntity;
@@ -80,6 +83,7 @@ public class AriaManager {
 
     public static void init(Application app) {
         APP = app;
+        HttpConnectionPool.init();
     }
 
     public static AriaManager getInstance() {
@@ -115,6 +119,57 @@ public class AriaManager {
         return this;
     }
 
+    /**
+     * 设置所有下载和上传任务的总速度
+     *
+     * @param maxSpeed 单位为kb/s，0表示不限速
+     */
+    public AriaManager setMaxSpeed(int maxSpeed) {
+        mDConfig.setGlobalMaxSpeed(maxSpeed);
+        return this;
+    }
+
+    /**
+     * 设置下载队列的总速度
+     *
+     * @param maxSpeed 单位为kb/s，0表示不限速
+     */
+    public AriaManager setDownloadMaxSpeed(int maxSpeed) {
+        mDConfig.setMaxSpeed(maxSpeed);
+        return this;
+    }
+
+    /**
+     * 设置上传队列的总速度
+     *
+     * @param maxSpeed 单位为kb/s，0表示不限速
+     */
+    public AriaManager setUploadMaxSpeed(int maxSpeed) {
+        mUConfig.setMaxSpeed(maxSpeed);
+        return this;
+    }
+
+    /**
+     * 设置同一个主机同时执行的最大任务数，同时修改下载和上传配置，下载队列和上传队列分别计数
+     *
+     * @param maxNum 0表示不限制
+     */
+    public AriaManager setMaxTaskNumPerHost(int maxNum) {
+        getDownloadConfig().setMaxTaskNumPerHost(maxNum);
+        getUploadConfig().setMaxTaskNumPerHost(maxNum);
+        return this;
+    }
+
+    /**
+     * 设置同一个主机同时打开的最大连接数，所有下载任务的线程共用
+     *
+     * @param maxNum 0表示不限制
+     */
+    public AriaManager setMaxConnectionsPerHost(int maxNum) {
+        getDownloadConfig().setMaxConnectionsPerHost(maxNum);
+        return this;
+    }
+
     /**
      * 如果需要在代码中修改下载配置，请使用以下方法
      * <pre>
@@ -304,6 +359,11 @@ public class AriaManager {
         }
         mDConfig = Configuration.DownloadConfig.getInstance();
         mUConfig = Configuration.UploadConfig.getInstance();
+        SpeedLimiter speedLimiter = SpeedLimiter.getInstance();
+        speedLimiter.setGlobalMaxSpeed(mDConfig.getGlobalMaxSpeed());
+        speedLimiter.setDownloadMaxSpeed(mDConfig.getMaxSpeed());
+        speedLimiter.setUploadMaxSpeed(mUConfig.getMaxSpeed());
+        HostLimiter.getInstance().setMaxConnectionsPerHost(mDConfig.getMaxConnectionsPerHost());
         if (tempDir.exists()) {
             File newDir = new File(APP.getFilesDir().getPath() + DOWNLOAD_TEMP_DIR);
             newDir.mkdirs();
@@ -82,10 +82,64 @@ class ConfigHelper extends DefaultHandler {
                 case "queueMod":
                     loadQueueMod(value);
                     break;
+                case "maxSpeed":
+                    loadMaxSpeed(value);
+                    break;
+                case "maxTaskNumPerHost":
+                    loadMaxTaskNumPerHost(value);
+                    break;
+                case "maxConnectionsPerHost":
+                    loadMaxConnectionsPerHost(value);
+                    break;
             }
         }
     }
 
+    private void loadMaxTaskNumPerHost(String value) {
+        int maxNum = 0;
+        if (!TextUtils.isEmpty(value)) {
+            maxNum = Integer.parseInt(value);
+        }
+        if (maxNum < 0) {
+            maxNum = 0;
+        }
+        if (isDownloadConfig) {
+            mDownloadConfig.maxTaskNumPerHost = maxNum;
+        }
+        if (isUploadConfig) {
+            mUploadConfig.maxTaskNumPerHost = maxNum;
+        }
+    }
+
+    private void loadMaxConnectionsPerHost(String value) {
+        int maxNum = 0;
+        if (!TextUtils.isEmpty(value)) {
+            maxNum = Integer.parseInt(value);
+        }
+        if (maxNum < 0) {
+            maxNum = 0;
+        }
+        if (isDownloadConfig) {
+            mDownloadConfig.maxConnectionsPerHost = maxNum;
+        }
+    }
+
+    private void loadMaxSpeed(String value) {
+        int maxSpeed = 0;
+        if (!TextUtils.isEmpty(value)) {
+            maxSpeed = Integer.parseInt(value);
+        }
+        if (maxSpeed < 0) {
+            maxSpeed = 0;
+        }
+        if (isDownloadConfig) {
+            mDownloadConfig.maxSpeed = maxSpeed;
+        }
+        if (isUploadConfig) {
+            mUploadConfig.maxSpeed = maxSpeed;
+        }
+    }
+
     private void loadQueueMod(String value) {
         String mod = "now";
         if (!TextUtils.isEmpty(value) && (value.equalsIgnoreCase("now") || value.equalsIgnoreCase(
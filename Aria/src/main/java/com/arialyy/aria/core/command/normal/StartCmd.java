@@ -20,6 +20,7 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import com.arialyy.aria.core.AriaManager;
+import com.arialyy.aria.core.common.ExecutorManager;
 import com.arialyy.aria.core.common.QueueMod;
 import com.arialyy.aria.core.download.DownloadTaskEntity;
 import com.arialyy.aria.core.inf.AbsTask;
@@ -80,6 +81,9 @@ class StartCmd<T extends AbsTaskEntity> extends AbsNormalCmd<T> {
                         || task.getState() == IEntity.STATE_POST_PRE
                         || task.getState() == IEntity.STATE_COMPLETE) {
                     startTask();
+                } else if (isDownloadCmd) {
+                    //下载队列启动任务时会按优先级抢占，抢占失败的任务继续等待
+                    startTask();
                 }
             }
         } else {
@@ -96,7 +100,7 @@ class StartCmd<T extends AbsTaskEntity> extends AbsNormalCmd<T> {
      * 当缓冲队列为null时，查找数据库中所有等待中的任务
      */
     private void findAllWaitTask() {
-        new Thread(new WaitTaskThread()).start();
+        ExecutorManager.getInstance().executeFlow(new WaitTaskThread());
     }
 
     private class WaitTaskThread implements Runnable {
@@ -15,10 +15,12 @@
  */
 package com.arialyy.aria.core.common;
 
+import android.text.TextUtils;
 import android.util.Log;
 import android.util.SparseArray;
 
 import com.arialyy.aria.core.AriaManager;
+import com.arialyy.aria.core.download.DownloadEntity;
 import com.arialyy.aria.core.download.DownloadTaskEntity;
 import com.arialyy.aria.core.inf.AbsEntity;
 import com.arialyy.aria.core.inf.AbsTaskEntity;
@@ -26,14 +28,13 @@ import com.arialyy.aria.core.inf.IDownloadListener;
 import com.arialyy.aria.core.inf.IEventListener;
 import com.arialyy.aria.core.upload.UploadTaskEntity;
 import com.arialyy.aria.util.CommonUtil;
+import com.arialyy.aria.util.ErrorHelp;
 
 import java.io.File;
-import java.util.Properties;
-import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * Created by AriaL on 2017/7/1.
@@ -50,13 +51,30 @@ public abstract class AbsFileer<ENTITY extends AbsEntity, TASK_ENTITY extends Ab
     protected TASK_ENTITY mTaskEntity;
     protected ENTITY mEntity;
     protected File mConfigFile;//信息配置文件
+    protected BreakpointJournal mJournal; //断点记录
+    private FileChannelWriter mFileWriter;
     protected File mTempFile; //下载的文件
     protected boolean isNewTask = true;
     protected StateConstance mConstance;
-    private ExecutorService mFixedThreadPool;
+    /**
+     * 最大线程数，即断点记录文件的槽位数
+     */
     private int mThreadNum, mRealThreadNum;
     private SparseArray<AbsThreadTask> mTask = new SparseArray<>();
-    private Timer mTimer;
+    /**
+     * 还没有启动过线程的槽位，自适应增加线程时使用
+     */
+    private List<Integer> mIdleSlots = new ArrayList<>();
+    private AdaptiveThreadController mController;
+    private volatile ScheduledFuture<?> mTimer;
+    /**
+     * 文件内容校验器，服务器返回了md5时才会创建
+     */
+    private ContentHasher mHasher;
+    /**
+     * 分块校验器，断点记录文件有分块表时才会创建
+     */
+    private ChunkVerifier mVerifier;
 
     protected AbsFileer(IEventListener listener, TASK_ENTITY taskEntity) {
         mListener = listener;
@@ -86,17 +104,31 @@ public abstract class AbsFileer<ENTITY extends AbsEntity, TASK_ENTITY extends Ab
      */
     private void startFlow() {
         mConstance.resetState();
+        mTask.clear();
+        mIdleSlots.clear();
+        mController = null;
+        mVerifier = null;
         checkTask();
+        mFileWriter = new FileChannelWriter(mTempFile);
+        mHasher = null;
+        if (mEntity instanceof DownloadEntity
+                && !TextUtils.isEmpty(((DownloadEntity) mEntity).getMd5Code())) {
+            mHasher = ContentHasher.create(mTempFile, mEntity.getFileSize());
+            mFileWriter.setHasher(mHasher);
+        }
+        SpeedLimiter.getInstance().register(mEntity.getKey(), mTaskEntity.maxSpeed);
         if (mListener instanceof IDownloadListener) {
             ((IDownloadListener) mListener).onPostPre(mEntity.getFileSize());
         }
         if (!mTaskEntity.isSupportBP) {
             mThreadNum = 1;
-            mConstance.THREAD_NUM = mThreadNum;
+            mConstance.THREAD_NUM.set(mThreadNum);
             handleNoSupportBP();
         } else {
             mThreadNum = isNewTask ? (getNewTaskThreadNum()) : mRealThreadNum;
-            mConstance.THREAD_NUM = mThreadNum;
+            if (mThreadNum > 1) {
+                mController = new AdaptiveThreadController(mEntity.getUrl(), mThreadNum);
+            }
             handleBreakpoint();
         }
         startTimer();
@@ -111,11 +143,10 @@ public abstract class AbsFileer<ENTITY extends AbsEntity, TASK_ENTITY extends Ab
     }
 
     /**
-     * 启动进度获取定时器
+     * 启动进度获取定时器，使用全局定时器，每次计时时刷新进度、调整线程数并记录断点
      */
     private void startTimer() {
-        mTimer = new Timer(true);
-        mTimer.schedule(new TimerTask() {
+        mTimer = ExecutorManager.getInstance().scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
                 if (mConstance.isComplete()
@@ -123,17 +154,156 @@ public abstract class AbsFileer<ENTITY extends AbsEntity, TASK_ENTITY extends Ab
                         || mConstance.isCancel()
                         || !mConstance.isRunning) {
                     closeTimer();
-                } else if (mConstance.CURRENT_LOCATION >= 0) {
-                    mListener.onProgress(mConstance.CURRENT_LOCATION);
+                } else {
+                    long location = mConstance.getCurrentLocation();
+                    if (location >= 0) {
+                        mListener.onProgress(location);
+                    }
+                    if (mController != null) {
+                        adjustThreadNum(location);
+                    }
+                    checkpoint();
+                    if (mHasher != null) {
+                        mHasher.catchUpAsync(getWrittenLength());
+                    }
+                    if (mVerifier != null) {
+                        mVerifier.recordAsync(getPendingRanges());
+                    }
                 }
             }
         }, 0, 1000);
     }
 
+    /**
+     * 获取所有线程还没有写入的区间，退役的线程在完成当前区间前依然会写入，也需要统计
+     */
+    private synchronized List<long[]> getPendingRanges() {
+        List<long[]> ranges = new ArrayList<>();
+        for (int i = 0, size = mTask.size(); i < size; i++) {
+            AbsThreadTask task = mTask.valueAt(i);
+            long[] range = task == null ? null : task.getPendingRange();
+            if (range != null) {
+                ranges.add(range);
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * 获取从文件开始位置连续写入的长度，即所有未完成的线程中最小的写入位置
+     */
+    private long getWrittenLength() {
+        long length = mEntity.getFileSize();
+        for (long[] range : getPendingRanges()) {
+            length = Math.min(length, range[0]);
+        }
+        return length;
+    }
+
+    /**
+     * 所有线程完成后校验文件内容，服务器没有返回md5时不校验
+     *
+     * @return {@code false} 文件内容和服务器返回的md5不一致
+     */
+    boolean verifyContent() {
+        if (mHasher == null) {
+            return true;
+        }
+        try {
+            return mHasher.verify(((DownloadEntity) mEntity).getMd5Code());
+        } catch (IOException e) {
+            Log.e(TAG, "任务【" + mEntity.getFileName() + "】读取文件失败，无法校验\n" + CommonUtil.getPrintException(e));
+            return false;
+        }
+    }
+
+    /**
+     * 为所有线程记录断点，记录交给断点记录线程执行
+     */
+    private synchronized void checkpoint() {
+        for (int i = 0, size = mTask.size(); i < size; i++) {
+            AbsThreadTask task = mTask.valueAt(i);
+            if (task != null) {
+                task.requestCheckpoint();
+            }
+        }
+    }
+
+    /**
+     * 根据控制器的评估结果增加或减少线程，定时器线程只做判断，拆分区间和启动线程在流程线程中执行
+     */
+    private void adjustThreadNum(long location) {
+        int action = mController.onTick(location, getRunningThreadNum());
+        if (action == AdaptiveThreadController.ACTION_ADD) {
+            ExecutorManager.getInstance().executeFlow(mAddThreadTask);
+        } else if (action == AdaptiveThreadController.ACTION_RETIRE) {
+            retireThreadTask();
+        }
+    }
+
+    /**
+     * 获取正在下载的线程数
+     */
+    private synchronized int getRunningThreadNum() {
+        int num = 0;
+        for (int i = 0, size = mTask.size(); i < size; i++) {
+            AbsThreadTask task = mTask.valueAt(i);
+            if (task != null && !task.isRetired() && task.getRemainLen() > 0) {
+                num++;
+            }
+        }
+        return num;
+    }
+
+    private final Runnable mAddThreadTask = new Runnable() {
+        @Override
+        public void run() {
+            addThreadTask();
+        }
+    };
+
+    /**
+     * 使用空闲槽位增加一个线程，新线程接管剩余区间最大的线程的后半段
+     */
+    private synchronized void addThreadTask() {
+        if (mIdleSlots.isEmpty() || !mConstance.isRunning) {
+            return;
+        }
+        int slot = mIdleSlots.get(0);
+        AbsThreadTask task = createSingThreadTask(slot, 0, 0, mEntity.getFileSize());
+        //线程数在拆分区间时增加，保证被拆分的线程完成时不会按旧的线程数判断任务已经完成
+        if (task == null || !stealRange(task, true)) {
+            return;
+        }
+        mIdleSlots.remove(0);
+        mTask.put(slot, task);
+        if (!ExecutorManager.getInstance().executeSegment(task)) {
+            //线程池已经关闭，区间已经记录到断点记录文件中，下次恢复时继续下载
+            Log.w(TAG, "任务【" + mEntity.getFileName() + "】无法增加线程");
+        }
+    }
+
+    /**
+     * 让最后启动的线程在完成当前区间后退出，不再接管其它线程的区间，
+     * 它剩余的区间也会被其它线程接管
+     */
+    private synchronized void retireThreadTask() {
+        AbsThreadTask last = null;
+        for (int i = 0, size = mTask.size(); i < size; i++) {
+            AbsThreadTask task = mTask.valueAt(i);
+            if (task != null && !task.isRetired() && task.getRemainLen() > 0) {
+                last = task;
+            }
+        }
+        if (last != null) {
+            last.retire();
+        }
+    }
+
     protected void closeTimer() {
+        SpeedLimiter.getInstance().unregister(mEntity.getKey());
         if (mTimer != null) {
-            mTimer.purge();
-            mTimer.cancel();
+            ExecutorManager.getInstance().cancel(mTimer);
             mTimer = null;
         }
     }
@@ -148,7 +318,7 @@ public abstract class AbsFileer<ENTITY extends AbsEntity, TASK_ENTITY extends Ab
      */
     @Override
     public long getCurrentLocation() {
-        return mConstance.CURRENT_LOCATION;
+        return mConstance.getCurrentLocation();
     }
 
     @Override
@@ -161,9 +331,6 @@ public abstract class AbsFileer<ENTITY extends AbsEntity, TASK_ENTITY extends Ab
         closeTimer();
         mConstance.isRunning = false;
         mConstance.isCancel = true;
-        if (mFixedThreadPool != null) {
-            mFixedThreadPool.shutdown();
-        }
         for (int i = 0; i < mThreadNum; i++) {
             AbsThreadTask task = mTask.get(i);
             if (task != null) {
@@ -183,23 +350,24 @@ public abstract class AbsFileer<ENTITY extends AbsEntity, TASK_ENTITY extends Ab
         mConstance.isRunning = false;
         mConstance.isStop = true;
         if (mConstance.isComplete()) return;
-        if (mFixedThreadPool != null) {
-            mFixedThreadPool.shutdown();
-        }
         for (int i = 0; i < mThreadNum; i++) {
             AbsThreadTask task = mTask.get(i);
             if (task != null) {
                 task.stop();
             }
         }
+        //记录最后一次计时后完成的分块
+        if (mVerifier != null) {
+            mVerifier.recordAsync(getPendingRanges());
+        }
     }
 
     /**
-     * 直接调用的时候会自动启动线程执行
+     * 直接调用的时候会自动在工作线程中执行
      */
     @Override
     public void start() {
-        new Thread(this).start();
+        ExecutorManager.getInstance().executeFlow(this);
     }
 
     @Override
@@ -224,59 +392,29 @@ public abstract class AbsFileer<ENTITY extends AbsEntity, TASK_ENTITY extends Ab
      */
     protected abstract void checkTask();
 
+    /**
+     * 任务类型，用于记录错误日志
+     */
+    protected abstract String getTaskType();
+
     /**
      * 检查记录文件，如果是新任务返回{@code true}，否则返回{@code false}
      */
     protected boolean checkConfigFile() {
-        Properties pro = CommonUtil.loadConfig(mConfigFile);
-        if (pro.isEmpty()) {
-            return true;
-        }
-        Set<Object> keys = pro.keySet();
-        int num = 0;
-        for (Object key : keys) {
-            if (String.valueOf(key).contains("_record_")) {
-                num++;
-            }
-        }
-        if (num == 0) {
+        mJournal = BreakpointJournal.open(mConfigFile);
+        if (mJournal == null || mJournal.getFileLength() != mEntity.getFileSize()) {
             return true;
         }
-        mRealThreadNum = num;
+        mRealThreadNum = mJournal.getSlotNum();
         for (int i = 0; i < mRealThreadNum; i++) {
-            if (pro.getProperty(mTempFile.getName() + "_record_" + i) == null) {
-                Object state = pro.getProperty(mTempFile.getName() + "_state_" + i);
-                if (state != null && Integer.parseInt(state + "") == 1) {
-                    continue;
-                }
+            //槽位在任务创建时就已经初始化，记录无效表示记录文件已损坏
+            if (!mJournal.hasRecord(i)) {
                 return true;
             }
         }
         return false;
     }
 
-    /**
-     * 恢复记录地址
-     *
-     * @return true 表示下载完成
-     */
-    private boolean resumeRecordLocation(int i, long startL, long endL) {
-        mConstance.CURRENT_LOCATION += endL - startL;
-        Log.d(TAG, "++++++++++ 线程_" + i + "_已经下载完成 ++++++++++");
-        mConstance.COMPLETE_THREAD_NUM++;
-        mConstance.STOP_NUM++;
-        mConstance.CANCEL_NUM++;
-        if (mConstance.isComplete()) {
-            if (mConfigFile.exists()) {
-                mConfigFile.delete();
-            }
-            mListener.onComplete();
-            mConstance.isRunning = false;
-            return true;
-        }
-        return false;
-    }
-
     /**
      * 启动断点任务时，创建单线程任务
      *
@@ -294,75 +432,226 @@ public abstract class AbsFileer<ENTITY extends AbsEntity, TASK_ENTITY extends Ab
         config.START_LOCATION = startL;
         config.END_LOCATION = endL;
         config.CONFIG_FILE_PATH = mConfigFile.getPath();
+        config.JOURNAL = mJournal;
+        config.FILE_WRITER = mFileWriter;
         config.SUPPORT_BP = mTaskEntity.isSupportBP;
         config.TASK_ENTITY = mTaskEntity;
-        return selectThreadTask(config);
+        AbsThreadTask task = selectThreadTask(config);
+        if (task != null) {
+            task.setFileer(this);
+        }
+        return task;
+    }
+
+    /**
+     * 线程完成自己的区间后调用，将剩余区间最大的线程的后半段交给该线程下载，
+     * 避免任务的完成时间由最慢的线程决定
+     *
+     * @param thief 已经完成区间的线程
+     * @return {@code true} 已经为该线程分配了新的区间
+     */
+    boolean stealRange(AbsThreadTask thief) {
+        return stealRange(thief, false);
     }
 
     /**
-     * 处理断点
+     * @param isNewThread {@code true} 接管区间的是新增加的线程，拆分区间时需要增加任务的线程数
+     */
+    private synchronized boolean stealRange(AbsThreadTask thief, boolean isNewThread) {
+        if (!mConstance.isRunning || mConstance.isStop || mConstance.isCancel || thief.isRetired()) {
+            return false;
+        }
+        AbsThreadTask victim = null;
+        long maxRemain = 0;
+        for (int i = 0, size = mTask.size(); i < size; i++) {
+            AbsThreadTask task = mTask.valueAt(i);
+            if (task == null || task == thief) continue;
+            long remain = task.getRemainLen();
+            if (remain > maxRemain) {
+                maxRemain = remain;
+                victim = task;
+            }
+        }
+        //剩余区间太小时，重新建立连接的开销大于拆分的收益
+        return victim != null && maxRemain >= SUB_LEN && victim.splitRangeTo(thief, isNewThread);
+    }
+
+    /**
+     * 处理断点，新任务只为控制器给出的启动线程数分配区间，其余槽位作为空闲槽位，下载过程中再按需启动；
+     * 恢复任务时，已完成的槽位作为空闲槽位，未完成的槽位继续下载
      */
     private void handleBreakpoint() {
         long fileLength = mEntity.getFileSize();
-        Properties pro = CommonUtil.loadConfig(mConfigFile);
-        long blockSize = fileLength / mThreadNum;
-        int[] recordL = new int[mThreadNum];
-        for (int i = 0; i < mThreadNum; i++) {
-            recordL[i] = -1;
-        }
-        int rl = 0;
+        int startNum = mThreadNum;
         if (isNewTask) {
             handleNewTask();
+            try {
+                mJournal = BreakpointJournal.create(mConfigFile, mThreadNum, fileLength);
+            } catch (IOException e) {
+                Log.e(TAG, "创建断点记录文件失败\n" + CommonUtil.getPrintException(e));
+                mJournal = null;
+            }
+            if (mController != null && mJournal != null) {
+                startNum = mController.getStartNum();
+            }
+        }
+        if (mJournal != null && mJournal.getChunkNum() > 0 && mEntity instanceof DownloadEntity) {
+            mVerifier = new ChunkVerifier(mTempFile, mJournal);
+            if (!isNewTask && !repairChunks()) {
+                return;
+            }
         }
+        long blockSize = fileLength / startNum;
+        List<Integer> recordL = new ArrayList<>();
+        //未下载的长度，线程的区间可能被其它线程接管过，已下载长度需要通过未下载长度计算
+        long remainLen = 0;
         for (int i = 0; i < mThreadNum; i++) {
             long startL = i * blockSize, endL = (i + 1) * blockSize;
-            Object state = pro.getProperty(mTempFile.getName() + "_state_" + i);
-            if (state != null && Integer.parseInt(state + "") == 1) {  //该线程已经完成
-                if (resumeRecordLocation(i, startL, endL)) return;
-                continue;
+            if (i == (startNum - 1)) {
+                //最后一个线程的结束位置即为文件的总长度
+                endL = fileLength;
             }
-            //分配下载位置
-            Object record = pro.getProperty(mTempFile.getName() + "_record_" + i);
-            //如果有记录，则恢复下载
-            if (!isNewTask && record != null && Long.parseLong(record + "") >= 0) {
-                Long r = Long.parseLong(record + "");
-                if (r > startL) {
-                    mConstance.CURRENT_LOCATION += r - startL;
-                    startL = r;
+            if (!isNewTask && mJournal != null) {
+                if (mJournal.isComplete(i)) {  //该槽位的区间已经完成
+                    mIdleSlots.add(i);
+                    continue;
                 }
+                //如果有记录，则恢复下载
+                startL = mJournal.getRecord(i);
+                endL = mJournal.getEnd(i);
                 Log.d(TAG, "任务【" + mEntity.getFileName() + "】线程__" + i + "__恢复下载");
-                recordL[rl] = i;
-                rl++;
-            } else {
-                recordL[rl] = i;
-                rl++;
-            }
-            if (i == (mThreadNum - 1)) {
-                //最后一个线程的结束位置即为文件的总长度
-                endL = fileLength;
+            } else if (i >= startNum) {
+                if (mJournal != null) {
+                    mJournal.write(i, 0, 0, true);
+                }
+                mIdleSlots.add(i);
+                continue;
+            } else if (mJournal != null) {
+                mJournal.write(i, startL, endL, false);
             }
+            recordL.add(i);
+            remainLen += endL - startL;
             AbsThreadTask task = createSingThreadTask(i, startL, endL, fileLength);
             if (task == null) return;
             mTask.put(i, task);
         }
+        if (recordL.isEmpty()) {
+            Log.d(TAG, "任务【" + mEntity.getFileName() + "】所有线程都已经下载完成");
+            //上次校验失败的文件也会走到这里，完成前需要重新校验
+            if (!verifyContent()) {
+                Log.e(TAG, "任务【" + mEntity.getFileName() + "】文件内容和服务器返回的md5不一致");
+                if (mConfigFile.exists()) {
+                    mConfigFile.delete();
+                }
+                mConstance.isRunning = false;
+                mListener.onFail(false);
+                ErrorHelp.saveError(getTaskType(), mEntity, "", "文件md5校验失败");
+                return;
+            }
+            if (mConfigFile.exists()) {
+                mConfigFile.delete();
+            }
+            mConstance.isRunning = false;
+            mListener.onComplete();
+            return;
+        }
+        mConstance.THREAD_NUM.set(recordL.size());
+        mConstance.CURRENT_LOCATION = fileLength - remainLen;
         startSingleTask(recordL);
     }
 
+    /**
+     * 恢复下载时校验已经下载的分块，只重新下载内容损坏的分块，不需要重新下载整个文件
+     *
+     * @return {@code false} 任务已经停止或者分块重新下载失败，已经通知监听器
+     */
+    private boolean repairChunks() {
+        List<Integer> corrupt;
+        try {
+            corrupt = mVerifier.findCorruptChunks();
+        } catch (IOException e) {
+            Log.w(TAG, "任务【" + mEntity.getFileName() + "】读取文件失败，不校验分块\n" + CommonUtil.getPrintException(e));
+            return true;
+        }
+        for (int index : corrupt) {
+            if (mConstance.isStop || mConstance.isCancel) {
+                handleRepairStopped();
+                return false;
+            }
+            long start = mVerifier.getChunkStart(index), end = mVerifier.getChunkEnd(index);
+            Log.w(TAG, "任务【" + mEntity.getFileName() + "】分块【" + start + " - " + end + "】内容损坏，重新下载");
+            String msg;
+            try {
+                if (repairRange(mFileWriter, start, end)) {
+                    if (mConstance.isStop || mConstance.isCancel) {
+                        handleRepairStopped();
+                        return false;
+                    }
+                    mVerifier.record(index);
+                    continue;
+                }
+                //不支持重新下载分块，删除断点记录文件，重试时作为新任务重新下载整个文件
+                msg = "任务【" + mEntity.getFileName() + "】不支持重新下载分块，重新下载整个文件";
+                if (mConfigFile.exists()) {
+                    mConfigFile.delete();
+                }
+            } catch (IOException e) {
+                if (mConstance.isStop || mConstance.isCancel) {
+                    handleRepairStopped();
+                    return false;
+                }
+                msg = "任务【" + mEntity.getFileName() + "】分块【" + start + " - " + end + "】重新下载失败\n"
+                        + CommonUtil.getPrintException(e);
+            }
+            Log.e(TAG, msg);
+            mConstance.isRunning = false;
+            mListener.onFail(true);
+            ErrorHelp.saveError(getTaskType(), mEntity, "", msg);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 修复分块时任务被停止或取消，这时还没有启动线程，需要在这里通知监听器
+     */
+    private void handleRepairStopped() {
+        mConstance.isRunning = false;
+        if (mConstance.isCancel) {
+            mListener.onCancel();
+        } else {
+            mListener.onStop(mEntity.getCurrentProgress());
+        }
+    }
+
+    /**
+     * 重新下载文件的指定区间，用于恢复下载时修复内容损坏的分块。
+     * 默认不支持，返回{@code false}，这时会删除断点记录文件，任务重试时重新下载整个文件；
+     * 支持Range请求的子类需要覆盖该方法，读取过程中任务停止时直接返回，由调用者处理
+     *
+     * @param writer 文件写入器
+     * @param start  区间开始位置
+     * @param end    区间结束位置
+     * @return {@code true} 区间已经重新下载或任务已经停止，{@code false} 不支持重新下载分块
+     */
+    protected boolean repairRange(FileChannelWriter writer, long start, long end) throws IOException {
+        return false;
+    }
+
     /**
      * 启动单线程下载任务
      */
-    private void startSingleTask(int[] recordL) {
+    private void startSingleTask(List<Integer> recordL) {
         if (mConstance.CURRENT_LOCATION > 0) {
             mListener.onResume(mConstance.CURRENT_LOCATION);
         } else {
             mListener.onStart(mConstance.CURRENT_LOCATION);
         }
-        mFixedThreadPool = Executors.newFixedThreadPool(recordL.length);
+        //线程在全局线程池中执行，下载过程中可能会增加线程
         for (int l : recordL) {
-            if (l == -1) continue;
             Runnable task = mTask.get(l);
             if (task != null) {
-                mFixedThreadPool.execute(task);
+                ExecutorManager.getInstance().executeSegment(task);
             }
         }
     }
@@ -384,13 +673,13 @@ public abstract class AbsFileer<ENTITY extends AbsEntity, TASK_ENTITY extends Ab
         config.START_LOCATION = 0;
         config.END_LOCATION = config.FILE_SIZE;
         config.CONFIG_FILE_PATH = mConfigFile.getPath();
+        config.FILE_WRITER = mFileWriter;
         config.SUPPORT_BP = mTaskEntity.isSupportBP;
         config.TASK_ENTITY = mTaskEntity;
         AbsThreadTask task = selectThreadTask(config);
         if (task == null) return;
         mTask.put(0, task);
-        mFixedThreadPool = Executors.newFixedThreadPool(1);
-        mFixedThreadPool.execute(task);
+        ExecutorManager.getInstance().executeSegment(task);
         mListener.onStart(0);
     }
 
@@ -16,7 +16,6 @@
 package com.arialyy.aria.core.common;
 
 import android.os.Build;
-import android.text.TextUtils;
 import android.util.Log;
 
 import com.arialyy.aria.core.AriaManager;
@@ -30,9 +29,8 @@ import com.arialyy.aria.util.NetUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Properties;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Created by lyy on 2017/1/18.
@@ -49,7 +47,7 @@ public abstract class AbsThreadTask<ENTITY extends AbsEntity, TASK_ENTITY extend
      */
     private final int RETRY_INTERVAL = 5000;
     private final String TAG = "AbsThreadTask";
-    protected long mChildCurrentLocation = 0, mSleepTime = 0;
+    protected volatile long mChildCurrentLocation = 0;
     protected int mBufSize;
     protected String mConfigFPath;
     protected IEventListener mListener;
@@ -59,8 +57,47 @@ public abstract class AbsThreadTask<ENTITY extends AbsEntity, TASK_ENTITY extend
     protected TASK_ENTITY mTaskEntity;
     private int mFailNum = 0;
     private String mTaskType;
-    private Timer mFailTimer;
-    private long mLastSaveTime;
+    private ScheduledFuture<?> mFailTimer;
+    private ProgressCounter mProgress;
+    private AbsFileer mFileer;
+    /**
+     * 区间锁，用于保证区间拆分时不会和读取线程写入的数据重叠
+     */
+    private final Object mRangeLock = new Object();
+    /**
+     * 已经被读取线程认领的位置，该位置之前的数据已经或正在写入文件
+     */
+    private long mClaimLocation;
+    /**
+     * 线程已经被退役，完成当前区间后不再接管其它线程的区间
+     */
+    private volatile boolean isRetired = false;
+    /**
+     * 区间版本，线程接管新的区间时增加，用于丢弃旧区间的异步记录
+     */
+    private int mRangeVersion = 0;
+    /**
+     * 最近一次请求记录的位置
+     */
+    private long mLastRequestRecord = -1;
+    /**
+     * 等待断点记录线程记录的位置和区间版本，null表示没有等待中的记录
+     */
+    private final AtomicReference<long[]> mPendingRecord = new AtomicReference<>();
+    private final Runnable mCheckpointTask = new Runnable() {
+        @Override
+        public void run() {
+            long[] pending = mPendingRecord.getAndSet(null);
+            if (pending == null) {
+                return;
+            }
+            try {
+                forceAndWrite(false, pending[0], (int) pending[1]);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    };
 
     protected AbsThreadTask(StateConstance constance, IEventListener listener,
                             SubThreadConfig<TASK_ENTITY> info) {
@@ -75,7 +112,12 @@ public abstract class AbsThreadTask<ENTITY extends AbsEntity, TASK_ENTITY extend
         mConfigFPath = info.CONFIG_FILE_PATH;
         mBufSize = manager.getDownloadConfig().getBuffSize();
         mTaskType = getTaskType();
-        mLastSaveTime = System.currentTimeMillis();
+        mClaimLocation = mConfig.START_LOCATION;
+        mProgress = STATE.createCounter();
+    }
+
+    void setFileer(AbsFileer fileer) {
+        mFileer = fileer;
     }
 
     protected abstract String getTaskType();
@@ -85,6 +127,156 @@ public abstract class AbsThreadTask<ENTITY extends AbsEntity, TASK_ENTITY extend
         return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
     }
 
+    /**
+     * 开始下载区间前调用，重置认领位置
+     */
+    protected void resetClaimLocation() {
+        synchronized (mRangeLock) {
+            mClaimLocation = mConfig.START_LOCATION;
+        }
+    }
+
+    /**
+     * 认领即将写入文件的数据长度，区间可能已经被其它线程接管了一部分，只能写入自己区间内的数据
+     *
+     * @param len 读取到的数据长度
+     * @return 可以写入的数据长度，返回0表示已经到达区间结束位置
+     */
+    protected int claimRange(int len) {
+        synchronized (mRangeLock) {
+            long remain = mConfig.END_LOCATION - mClaimLocation;
+            if (remain <= 0) {
+                return 0;
+            }
+            if (len > remain) {
+                len = (int) remain;
+            }
+            mClaimLocation += len;
+            return len;
+        }
+    }
+
+    /**
+     * 获取该线程剩余未下载的长度
+     */
+    long getRemainLen() {
+        synchronized (mRangeLock) {
+            return mConfig.END_LOCATION - Math.max(mClaimLocation, mConfig.START_LOCATION);
+        }
+    }
+
+    /**
+     * 将剩余区间的后半段拆分给其它线程
+     *
+     * @param thief       接管后半段区间的线程
+     * @param isNewThread {@code true} 接管区间的是新增加的线程，在缩短当前区间前增加任务的线程数，
+     *                    否则当前线程可能在线程数增加前完成缩短后的区间，使任务提前完成
+     * @return {@code true} 拆分成功
+     */
+    boolean splitRangeTo(AbsThreadTask thief, boolean isNewThread) {
+        long start, end;
+        synchronized (mRangeLock) {
+            long claim = Math.max(mClaimLocation, mConfig.START_LOCATION);
+            long remain = mConfig.END_LOCATION - claim;
+            if (remain <= 1) {
+                return false;
+            }
+            if (isNewThread) {
+                STATE.THREAD_NUM.incrementAndGet();
+            }
+            start = claim + remain / 2;
+            end = mConfig.END_LOCATION;
+            mConfig.END_LOCATION = start;
+        }
+        Log.d(TAG, "任务【"
+                + mConfig.TEMP_FILE.getName()
+                + "】线程__"
+                + thief.mConfig.THREAD_ID
+                + "__接管线程__"
+                + mConfig.THREAD_ID
+                + "__的区间【"
+                + start
+                + " - "
+                + end
+                + "】");
+        thief.takeOverRange(start, end);
+        checkpointAsync();
+        return true;
+    }
+
+    /**
+     * 接管新的下载区间
+     */
+    private void takeOverRange(long start, long end) {
+        synchronized (mRangeLock) {
+            mConfig.START_LOCATION = start;
+            mConfig.END_LOCATION = end;
+            mClaimLocation = start;
+            mChildCurrentLocation = start;
+            mRangeVersion++;
+        }
+        mPendingRecord.set(null);
+        mFailNum = 0;
+        try {
+            writeConfig(false, start);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 退役该线程，用于自适应减少线程数
+     */
+    void retire() {
+        isRetired = true;
+    }
+
+    boolean isRetired() {
+        return isRetired;
+    }
+
+    /**
+     * 获取该线程还没有写入文件的区间
+     *
+     * @return {开始位置, 结束位置}，区间已经写入完成时返回null
+     */
+    long[] getPendingRange() {
+        synchronized (mRangeLock) {
+            long written = Math.max(mChildCurrentLocation, mConfig.START_LOCATION);
+            return written < mConfig.END_LOCATION ? new long[]{written, mConfig.END_LOCATION} : null;
+        }
+    }
+
+    /**
+     * 所有线程完成后调用，校验文件内容，校验失败时任务失败，并且不再重试
+     *
+     * @return {@code true} 校验通过或者不需要校验
+     */
+    protected boolean verifyContent() {
+        if (mFileer == null || mFileer.verifyContent()) {
+            return true;
+        }
+        Log.e(TAG, "任务【" + mConfig.TEMP_FILE.getName() + "】文件内容和服务器返回的md5不一致");
+        //无法确定损坏的位置，删除断点记录文件，重新开始时重新下载整个文件
+        File configFile = new File(mConfigFPath);
+        if (configFile.exists()) {
+            configFile.delete();
+        }
+        STATE.isRunning = false;
+        mListener.onFail(false);
+        ErrorHelp.saveError(mTaskType, mEntity, "", "文件md5校验失败");
+        return false;
+    }
+
+    /**
+     * 当前线程的区间已经下载完成，尝试接管剩余区间最大的线程的后半段区间
+     *
+     * @return {@code true} 已经接管新的区间，需要继续下载
+     */
+    protected boolean stealRange() {
+        return mConfig.SUPPORT_BP && mFileer != null && mFileer.stealRange(this);
+    }
+
     /**
      * 停止任务
      */
@@ -100,16 +292,19 @@ public abstract class AbsThreadTask<ENTITY extends AbsEntity, TASK_ENTITY extend
                             + mConfig.THREAD_ID
                             + "__停止, stop location ==> "
                             + currentTemp);
-                    writeConfig(false, currentTemp);
+                    checkpoint(false, currentTemp);
                     if (STATE.isStop()) {
+                        if (mConfig.JOURNAL != null) {
+                            mConfig.JOURNAL.force();
+                        }
                         Log.d(TAG, "任务【" + mConfig.TEMP_FILE.getName() + "】已停止");
                         STATE.isRunning = false;
-                        mListener.onStop(STATE.CURRENT_LOCATION);
+                        mListener.onStop(STATE.getCurrentLocation());
                     }
                 } else {
                     Log.d(TAG, "任务【" + mConfig.TEMP_FILE.getName() + "】已停止");
                     STATE.isRunning = false;
-                    mListener.onStop(STATE.CURRENT_LOCATION);
+                    mListener.onStop(STATE.getCurrentLocation());
                 }
             } catch (IOException e) {
                 e.printStackTrace();
@@ -118,26 +313,64 @@ public abstract class AbsThreadTask<ENTITY extends AbsEntity, TASK_ENTITY extend
     }
 
     /**
-     * 执行中
+     * 限速，写入数据前调用，超过全局、队列或任务的限速时阻塞当前线程
+     *
+     * @param len 需要写入的数据长度
+     */
+    protected void limitSpeed(int len) {
+        try {
+            SpeedLimiter.getInstance().acquire(mEntity.getKey(), !(mEntity instanceof UploadEntity), len);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 执行中，只在线程自己的读取循环中调用，不需要加锁
      */
     protected void progress(long len) {
-        synchronized (AriaManager.LOCK) {
-            mChildCurrentLocation += len;
-            STATE.CURRENT_LOCATION += len;
-            if (System.currentTimeMillis() - mLastSaveTime > 5000) {
-                mLastSaveTime = System.currentTimeMillis();
-                new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        final long currentTemp = mChildCurrentLocation;
-                        try {
-                            writeConfig(false, currentTemp);
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                }).start();
+        mChildCurrentLocation += len;
+        mProgress.add(len);
+    }
+
+    /**
+     * 请求记录断点，由下载器的定时器调用。同步磁盘比较耗时，交给断点记录线程执行，
+     * 上一次记录还没有执行时只更新需要记录的位置
+     */
+    void requestCheckpoint() {
+        if (!mConfig.SUPPORT_BP || mConfig.JOURNAL == null) {
+            return;
+        }
+        long[] record;
+        synchronized (mRangeLock) {
+            if (mChildCurrentLocation == mLastRequestRecord) {
+                return;
             }
+            mLastRequestRecord = mChildCurrentLocation;
+            record = new long[]{mChildCurrentLocation, mRangeVersion};
+        }
+        postCheckpoint(record);
+    }
+
+    /**
+     * 立即请求记录当前的下载位置，用于区间拆分和重试前，同步磁盘交给断点记录线程执行，不阻塞下载线程和定时器
+     */
+    private void checkpointAsync() {
+        if (!mConfig.SUPPORT_BP || mConfig.JOURNAL == null) {
+            return;
+        }
+        long[] record;
+        synchronized (mRangeLock) {
+            mLastRequestRecord = mChildCurrentLocation;
+            record = new long[]{mChildCurrentLocation, mRangeVersion};
+        }
+        postCheckpoint(record);
+    }
+
+    private void postCheckpoint(long[] record) {
+        if (mPendingRecord.getAndSet(record) == null
+                && !ExecutorManager.getInstance().executeCheckpoint(mCheckpointTask)) {
+            mPendingRecord.set(null);
         }
     }
 
@@ -174,22 +407,18 @@ public abstract class AbsThreadTask<ENTITY extends AbsEntity, TASK_ENTITY extend
      */
     protected void fail(final long currentLocation, String msg, Exception ex) {
         synchronized (AriaManager.LOCK) {
-            try {
-                if (ex != null) {
-                    Log.e(TAG, msg + "\n" + CommonUtil.getPrintException(ex));
-                } else {
-                    Log.e(TAG, msg);
-                }
-                if (mConfig.SUPPORT_BP) {
-                    writeConfig(false, currentLocation);
-                    retryThis(STATE.THREAD_NUM != 1);
-                } else {
-                    Log.e(TAG, "任务【" + mConfig.TEMP_FILE.getName() + "】执行失败");
-                    mListener.onFail(true);
-                    ErrorHelp.saveError(mTaskType, mEntity, "", CommonUtil.getPrintException(ex));
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
+            if (ex != null) {
+                Log.e(TAG, msg + "\n" + CommonUtil.getPrintException(ex));
+            } else {
+                Log.e(TAG, msg);
+            }
+            if (mConfig.SUPPORT_BP) {
+                checkpointAsync();
+                retryThis(STATE.THREAD_NUM.get() != 1);
+            } else {
+                Log.e(TAG, "任务【" + mConfig.TEMP_FILE.getName() + "】执行失败");
+                mListener.onFail(true);
+                ErrorHelp.saveError(mTaskType, mEntity, "", CommonUtil.getPrintException(ex));
             }
         }
     }
@@ -205,12 +434,9 @@ public abstract class AbsThreadTask<ENTITY extends AbsEntity, TASK_ENTITY extend
                     "任务【" + mConfig.TEMP_FILE.getName() + "】thread__" + mConfig.THREAD_ID + "__重试失败，网络未连接");
         }
         if (mFailNum < RETRY_NUM && needRetry && NetUtils.isConnected(AriaManager.APP)) {
-            if (mFailTimer != null) {
-                mFailTimer.purge();
-                mFailTimer.cancel();
-            }
-            mFailTimer = new Timer(true);
-            mFailTimer.schedule(new TimerTask() {
+            ExecutorManager.getInstance().cancel(mFailTimer);
+            //重试时会重新下载，需要在工作线程中执行
+            mFailTimer = ExecutorManager.getInstance().executeSegmentDelayed(new Runnable() {
                 @Override
                 public void run() {
                     mFailNum++;
@@ -233,23 +459,45 @@ public abstract class AbsThreadTask<ENTITY extends AbsEntity, TASK_ENTITY extend
     }
 
     /**
-     * 将记录写入到配置文件
+     * 断点记录，先将已经写入的数据同步到磁盘，再记录下载位置，保证记录的位置之前的数据不会因为断电丢失。
+     * 等待中的异步记录比当前记录旧，会被丢弃
+     */
+    protected void checkpoint(boolean isComplete, long record) throws IOException {
+        mPendingRecord.set(null);
+        forceAndWrite(isComplete, record, -1);
+    }
+
+    private void forceAndWrite(boolean isComplete, long record, int rangeVersion) throws IOException {
+        if (mConfig.FILE_WRITER != null) {
+            mConfig.FILE_WRITER.force();
+        }
+        writeConfig(isComplete, record, rangeVersion);
+    }
+
+    /**
+     * 将记录写入到断点记录文件，只修改该线程的槽位
      */
     protected void writeConfig(boolean isComplete, final long record) throws IOException {
-        synchronized (AriaManager.LOCK) {
-            String key = null, value = null;
-            if (0 < record && record < mConfig.END_LOCATION) {
-                key = mConfig.TEMP_FILE.getName() + "_record_" + mConfig.THREAD_ID;
-                value = String.valueOf(record);
-            } else if (record >= mConfig.END_LOCATION || isComplete) {
-                key = mConfig.TEMP_FILE.getName() + "_state_" + mConfig.THREAD_ID;
-                value = "1";
+        writeConfig(isComplete, record, -1);
+    }
+
+    /**
+     * @param rangeVersion 记录所属的区间版本，线程已经接管了新的区间时丢弃该记录，-1表示当前区间
+     */
+    private void writeConfig(boolean isComplete, long record, int rangeVersion) {
+        BreakpointJournal journal = mConfig.JOURNAL;
+        if (!mConfig.SUPPORT_BP || journal == null) {
+            return;
+        }
+        synchronized (mRangeLock) {
+            if (rangeVersion >= 0 && rangeVersion != mRangeVersion) {
+                return;
             }
-            if (!TextUtils.isEmpty(key) && !TextUtils.isEmpty(value)) {
-                File configFile = new File(mConfigFPath);
-                Properties pro = CommonUtil.loadConfig(configFile);
-                pro.setProperty(key, value);
-                CommonUtil.saveConfig(configFile, pro);
+            long end = mConfig.END_LOCATION;
+            if (isComplete || record >= end) {
+                journal.write(mConfig.THREAD_ID, end, end, true);
+            } else {
+                journal.write(mConfig.THREAD_ID, Math.max(record, mConfig.START_LOCATION), end, false);
             }
         }
     }
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.arialyy.aria.core.AriaManager;
+import com.arialyy.aria.util.CommonUtil;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * 自适应线程数控制器。
+ * 任务先以较少的线程启动，每个评估周期根据总速度决定是否增加线程：
+ * 1、增加线程后总速度明显提升，继续增加，直到达到最大线程数
+ * 2、增加线程后总速度没有提升，说明服务器限速或者带宽已满，停止增加，并记住该主机的线程数
+ * 3、总速度明显下降，说明服务器限制了连接，减少线程
+ */
+class AdaptiveThreadController {
+    static final int ACTION_NONE = 0, ACTION_ADD = 1, ACTION_RETIRE = 2;
+    private static final String TAG = "ThreadController";
+    private static final String PRE_NAME = "AriaHostThreadNum";
+    /**
+     * 没有主机记录时，任务启动的线程数
+     */
+    private static final int START_NUM = 2;
+    /**
+     * 评估周期，单位为进度回调次数
+     */
+    private static final int EVALUATE_TICKS = 3;
+    /**
+     * 增加线程后速度提升超过该比例才认为有效
+     */
+    private static final float IMPROVE_RATE = 1.1f;
+    /**
+     * 速度低于上一个周期的该比例时认为速度已经崩溃
+     */
+    private static final float COLLAPSE_RATE = 0.7f;
+
+    private final String mHost;
+    private final int mMaxNum;
+    private long mLastLocation = -1;
+    private long mWindowLen = 0;
+    private int mWindowTicks = 0;
+    private long mLastSpeed = 0;
+    private int mLastNum = 0;
+    private boolean isSaturated = false;
+
+    /**
+     * @param url    下载地址
+     * @param maxNum 最大线程数
+     */
+    AdaptiveThreadController(String url, int maxNum) {
+        mHost = getHost(url);
+        mMaxNum = maxNum;
+    }
+
+    /**
+     * 获取任务启动时的线程数，主机有记录时直接使用记录的线程数
+     */
+    int getStartNum() {
+        int hostNum = getHostNum();
+        int num = hostNum > 0 ? hostNum : START_NUM;
+        return Math.max(1, Math.min(num, mMaxNum));
+    }
+
+    /**
+     * 每次进度回调时调用
+     *
+     * @param location   当前进度
+     * @param runningNum 正在下载的线程数
+     * @return {@link #ACTION_NONE}、{@link #ACTION_ADD}、{@link #ACTION_RETIRE}
+     */
+    int onTick(long location, int runningNum) {
+        if (mLastLocation >= 0 && location > mLastLocation) {
+            mWindowLen += location - mLastLocation;
+        }
+        mLastLocation = location;
+        mWindowTicks++;
+        if (mWindowTicks < EVALUATE_TICKS) {
+            return ACTION_NONE;
+        }
+        long speed = mWindowLen / mWindowTicks;
+        mWindowLen = 0;
+        mWindowTicks = 0;
+        int action = ACTION_NONE;
+        if (mLastNum > 0 && runningNum > mLastNum) {
+            //上一个周期增加了线程
+            if (speed >= mLastSpeed * IMPROVE_RATE) {
+                if (runningNum < mMaxNum) {
+                    action = ACTION_ADD;
+                } else {
+                    saveHostNum(runningNum);
+                }
+            } else {
+                isSaturated = true;
+                saveHostNum(mLastNum);
+                if (speed < mLastSpeed * COLLAPSE_RATE) {
+                    action = ACTION_RETIRE;
+                }
+            }
+        } else if (!isSaturated && runningNum < mMaxNum) {
+            action = ACTION_ADD;
+        } else if (runningNum > 1 && mLastNum == runningNum && speed < mLastSpeed * COLLAPSE_RATE) {
+            //线程数没有变化，但单个连接的速度崩溃
+            isSaturated = true;
+            saveHostNum(runningNum - 1);
+            action = ACTION_RETIRE;
+        }
+        if (action != ACTION_NONE) {
+            Log.d(TAG, "主机【" + mHost + "】速度：" + speed + "b/s，线程数：" + runningNum + "，"
+                    + (action == ACTION_ADD ? "增加线程" : "减少线程"));
+        }
+        mLastSpeed = speed;
+        mLastNum = runningNum;
+        return action;
+    }
+
+    private int getHostNum() {
+        if (TextUtils.isEmpty(mHost)) {
+            return -1;
+        }
+        String num = CommonUtil.getString(PRE_NAME, AriaManager.APP, mHost);
+        return TextUtils.isEmpty(num) ? -1 : Integer.parseInt(num);
+    }
+
+    private void saveHostNum(int num) {
+        if (TextUtils.isEmpty(mHost) || num < 1) {
+            return;
+        }
+        CommonUtil.putString(PRE_NAME, AriaManager.APP, mHost, String.valueOf(num));
+    }
+
+    private String getHost(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * 断点记录文件，使用内存映射的定长二进制格式，每条线程占用一个槽位，记录时直接修改槽位，不需要重写整个文件。
+ * <pre>
+ * 文件头：magic(4) | version(4) | 槽位数(4) | 分块大小(4) | 文件长度(8) | 保留(8)
+ * 槽位：两个副本交替写入，每个副本：序号(4) | 状态(4) | 下载位置(8) | 结束位置(8) | crc(4) | 保留(4)
+ * 分块表：槽位之后，每个分块：crc(4) | crc取反(4)，分块写入完成后记录，恢复下载时用于找出损坏的分块
+ * </pre>
+ * 写入时覆盖序号较旧的副本，读取时使用校验通过且序号最新的副本，写入过程中进程被杀也不会丢失上一次的记录。
+ * 版本1的记录文件没有分块表，依然可以恢复下载，只是不校验分块
+ */
+public class BreakpointJournal {
+    private static final String TAG = "BreakpointJournal";
+    private static final int MAGIC = 0x41524941;
+    private static final int VERSION = 2;
+    private static final int VERSION_NO_CHUNK = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int COPY_SIZE = 32;
+    private static final int SLOT_SIZE = COPY_SIZE * 2;
+    private static final int CHUNK_ENTRY_SIZE = 8;
+    /**
+     * 默认分块大小，文件太大时加倍，避免分块表太大
+     */
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int MAX_CHUNK_NUM = 16 * 1024;
+    private static final int STATE_RUNNING = 0, STATE_COMPLETE = 1;
+
+    private final File mFile;
+    private MappedByteBuffer mBuffer;
+    private int mSlotNum;
+    private Object[] mSlotLocks;
+    private int mChunkSize, mChunkNum;
+
+    private BreakpointJournal(File file) {
+        mFile = file;
+    }
+
+    /**
+     * 打开已有的记录文件
+     *
+     * @return 记录文件不存在或者格式错误，返回null
+     */
+    public static BreakpointJournal open(File file) {
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            return null;
+        }
+        BreakpointJournal journal = new BreakpointJournal(file);
+        try {
+            journal.map(file.length());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        MappedByteBuffer buffer = journal.mBuffer;
+        int version = buffer.getInt(4);
+        if (buffer.getInt(0) != MAGIC || (version != VERSION && version != VERSION_NO_CHUNK)) {
+            Log.w(TAG, "记录文件【" + file.getPath() + "】格式错误");
+            return null;
+        }
+        int slotNum = buffer.getInt(8);
+        if (slotNum <= 0 || file.length() < HEADER_SIZE + (long) slotNum * SLOT_SIZE) {
+            return null;
+        }
+        journal.initSlots(slotNum);
+        if (version == VERSION) {
+            int chunkSize = buffer.getInt(12);
+            int chunkNum = getChunkNum(buffer.getLong(16), chunkSize);
+            if (chunkSize <= 0 || file.length() < journal.getChunkTableOffset() + (long) chunkNum * CHUNK_ENTRY_SIZE) {
+                Log.w(TAG, "记录文件【" + file.getPath() + "】分块表缺失");
+                return null;
+            }
+            journal.mChunkSize = chunkSize;
+            journal.mChunkNum = chunkNum;
+        }
+        return journal;
+    }
+
+    /**
+     * 创建新的记录文件，已存在的记录会被清除
+     *
+     * @param slotNum    槽位数，即线程数
+     * @param fileLength 下载文件的长度
+     */
+    public static BreakpointJournal create(File file, int slotNum, long fileLength)
+            throws IOException {
+        BreakpointJournal journal = new BreakpointJournal(file);
+        if (file.exists()) {
+            file.delete();
+        }
+        int chunkSize = CHUNK_SIZE;
+        while (fileLength / chunkSize > MAX_CHUNK_NUM) {
+            chunkSize <<= 1;
+        }
+        int chunkNum = getChunkNum(fileLength, chunkSize);
+        journal.map(HEADER_SIZE + (long) slotNum * SLOT_SIZE + (long) chunkNum * CHUNK_ENTRY_SIZE);
+        MappedByteBuffer buffer = journal.mBuffer;
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, slotNum);
+        buffer.putInt(12, chunkSize);
+        buffer.putLong(16, fileLength);
+        journal.initSlots(slotNum);
+        journal.mChunkSize = chunkSize;
+        journal.mChunkNum = chunkNum;
+        return journal;
+    }
+
+    private static int getChunkNum(long fileLength, int chunkSize) {
+        return fileLength <= 0 || chunkSize <= 0 ? 0 : (int) ((fileLength + chunkSize - 1) / chunkSize);
+    }
+
+    private void map(long size) throws IOException {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(mFile, "rw");
+            //映射建立后即使关闭文件，映射依然有效
+            mBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            if (raf != null) {
+                raf.close();
+            }
+        }
+    }
+
+    private void initSlots(int slotNum) {
+        mSlotNum = slotNum;
+        mSlotLocks = new Object[slotNum];
+        for (int i = 0; i < slotNum; i++) {
+            mSlotLocks[i] = new Object();
+        }
+    }
+
+    public int getSlotNum() {
+        return mSlotNum;
+    }
+
+    public long getFileLength() {
+        return mBuffer.getLong(16);
+    }
+
+    /**
+     * 记录线程的下载位置
+     *
+     * @param slot       线程id
+     * @param record     下载位置
+     * @param end        结束位置
+     * @param isComplete 该线程是否已经完成
+     */
+    public void write(int slot, long record, long end, boolean isComplete) {
+        if (slot < 0 || slot >= mSlotNum) {
+            return;
+        }
+        synchronized (mSlotLocks[slot]) {
+            int base = HEADER_SIZE + slot * SLOT_SIZE;
+            int newest = findNewestCopy(base);
+            int seq = newest == -1 ? 1 : mBuffer.getInt(newest) + 1;
+            //覆盖较旧的副本
+            int offset = newest == base ? base + COPY_SIZE : base;
+            int state = isComplete ? STATE_COMPLETE : STATE_RUNNING;
+            mBuffer.putInt(offset, seq);
+            mBuffer.putInt(offset + 4, state);
+            mBuffer.putLong(offset + 8, record);
+            mBuffer.putLong(offset + 16, end);
+            mBuffer.putInt(offset + 24, checksum(seq, state, record, end));
+        }
+    }
+
+    /**
+     * 槽位是否有有效的记录
+     */
+    public boolean hasRecord(int slot) {
+        return slot >= 0 && slot < mSlotNum
+                && findNewestCopy(HEADER_SIZE + slot * SLOT_SIZE) != -1;
+    }
+
+    /**
+     * 线程是否已经完成
+     */
+    public boolean isComplete(int slot) {
+        int offset = findCopy(slot);
+        return offset != -1 && mBuffer.getInt(offset + 4) == STATE_COMPLETE;
+    }
+
+    /**
+     * 获取线程的下载位置，没有记录返回-1
+     */
+    public long getRecord(int slot) {
+        int offset = findCopy(slot);
+        return offset == -1 ? -1 : mBuffer.getLong(offset + 8);
+    }
+
+    /**
+     * 获取线程的结束位置，没有记录返回-1
+     */
+    public long getEnd(int slot) {
+        int offset = findCopy(slot);
+        return offset == -1 ? -1 : mBuffer.getLong(offset + 16);
+    }
+
+    /**
+     * 分块大小，没有分块表时返回0
+     */
+    public int getChunkSize() {
+        return mChunkSize;
+    }
+
+    /**
+     * 分块数，没有分块表时返回0
+     */
+    public int getChunkNum() {
+        return mChunkNum;
+    }
+
+    /**
+     * 记录分块的crc
+     *
+     * @param index 分块序号
+     */
+    public void writeChunkCrc(int index, int crc) {
+        if (index < 0 || index >= mChunkNum) {
+            return;
+        }
+        //crc和它的反码一次写入，只写入一半时记录无效
+        mBuffer.putLong(getChunkTableOffset() + index * CHUNK_ENTRY_SIZE,
+                ((long) crc << 32) | (~crc & 0xffffffffL));
+    }
+
+    /**
+     * 清除分块的crc，用于分块需要重新下载时
+     */
+    public void clearChunkCrc(int index) {
+        if (index < 0 || index >= mChunkNum) {
+            return;
+        }
+        mBuffer.putLong(getChunkTableOffset() + index * CHUNK_ENTRY_SIZE, 0);
+    }
+
+    /**
+     * 分块是否已经记录了crc
+     */
+    public boolean hasChunkCrc(int index) {
+        if (index < 0 || index >= mChunkNum) {
+            return false;
+        }
+        long value = mBuffer.getLong(getChunkTableOffset() + index * CHUNK_ENTRY_SIZE);
+        return (int) value == ~(int) (value >>> 32);
+    }
+
+    /**
+     * 获取分块的crc，需要先通过{@link #hasChunkCrc(int)}判断是否有记录
+     */
+    public int getChunkCrc(int index) {
+        return (int) (mBuffer.getLong(getChunkTableOffset() + index * CHUNK_ENTRY_SIZE) >>> 32);
+    }
+
+    private int getChunkTableOffset() {
+        return HEADER_SIZE + mSlotNum * SLOT_SIZE;
+    }
+
+    /**
+     * 将记录写入磁盘
+     */
+    public void force() {
+        mBuffer.force();
+    }
+
+    private int findCopy(int slot) {
+        if (slot < 0 || slot >= mSlotNum) {
+            return -1;
+        }
+        synchronized (mSlotLocks[slot]) {
+            return findNewestCopy(HEADER_SIZE + slot * SLOT_SIZE);
+        }
+    }
+
+    /**
+     * 查找校验通过且序号最新的副本
+     *
+     * @return 副本的偏移量，没有有效的副本返回-1
+     */
+    private int findNewestCopy(int base) {
+        int first = isValid(base) ? base : -1;
+        int second = isValid(base + COPY_SIZE) ? base + COPY_SIZE : -1;
+        if (first == -1) return second;
+        if (second == -1) return first;
+        return mBuffer.getInt(second) - mBuffer.getInt(first) > 0 ? second : first;
+    }
+
+    private boolean isValid(int offset) {
+        int seq = mBuffer.getInt(offset);
+        return seq != 0 && mBuffer.getInt(offset + 24) == checksum(seq, mBuffer.getInt(offset + 4),
+                mBuffer.getLong(offset + 8), mBuffer.getLong(offset + 16));
+    }
+
+    private int checksum(int seq, int state, long record, long end) {
+        CRC32 crc = new CRC32();
+        updateCrc(crc, seq);
+        updateCrc(crc, state);
+        updateCrc(crc, (int) (record >>> 32));
+        updateCrc(crc, (int) record);
+        updateCrc(crc, (int) (end >>> 32));
+        updateCrc(crc, (int) end);
+        return (int) crc.getValue();
+    }
+
+    private void updateCrc(CRC32 crc, int value) {
+        crc.update(value >>> 24);
+        crc.update(value >>> 16);
+        crc.update(value >>> 8);
+        crc.update(value);
+    }
+}
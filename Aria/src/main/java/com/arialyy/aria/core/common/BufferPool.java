@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import com.arialyy.aria.core.AriaManager;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * 读取缓冲区池，线程开始下载时借出缓冲区，停止、失败、完成后归还，避免每次启动线程和重试都重新分配缓冲区。
+ * 缓冲区大小为{@link AriaManager#getDownloadConfig()}中设置的buffSize，大小改变后旧的缓冲区不再回收
+ */
+public class BufferPool {
+    /**
+     * 缓冲区池中保留的最大缓冲区数
+     */
+    private static final int MAX_POOL_SIZE = 32;
+    private static volatile BufferPool INSTANCE = null;
+    private final ArrayBlockingQueue<byte[]> mPool = new ArrayBlockingQueue<>(MAX_POOL_SIZE);
+
+    private BufferPool() {
+    }
+
+    public static BufferPool getInstance() {
+        if (INSTANCE == null) {
+            synchronized (BufferPool.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new BufferPool();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * 借出缓冲区，缓冲区池为空时新建缓冲区
+     */
+    public byte[] acquire() {
+        int size = getBufferSize();
+        byte[] buffer;
+        while ((buffer = mPool.poll()) != null) {
+            if (buffer.length == size) {
+                return buffer;
+            }
+        }
+        return new byte[size];
+    }
+
+    /**
+     * 归还缓冲区，缓冲区池已满或者缓冲区大小已经改变时直接丢弃
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null || buffer.length != getBufferSize()) {
+            return;
+        }
+        mPool.offer(buffer);
+    }
+
+    private int getBufferSize() {
+        return AriaManager.getInstance().getDownloadConfig().getBuffSize();
+    }
+}
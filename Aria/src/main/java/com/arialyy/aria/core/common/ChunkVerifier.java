@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * 分块校验器，分块写入完成后读取文件计算crc并记录到断点记录文件中；
+ * 恢复下载时重新计算已记录的分块，找出内容和记录不一致的分块，只需要重新下载这些分块，不需要重新下载整个文件
+ */
+class ChunkVerifier {
+    private static final String TAG = "ChunkVerifier";
+    private static final int READ_SIZE = 64 * 1024;
+    private final File mFile;
+    private final BreakpointJournal mJournal;
+    private final long mFileLength;
+    private final AtomicBoolean isRecording = new AtomicBoolean(false);
+    private byte[] mReadBuffer;
+
+    ChunkVerifier(File file, BreakpointJournal journal) {
+        mFile = file;
+        mJournal = journal;
+        mFileLength = journal.getFileLength();
+    }
+
+    long getChunkStart(int index) {
+        return (long) index * mJournal.getChunkSize();
+    }
+
+    long getChunkEnd(int index) {
+        return Math.min(getChunkStart(index) + mJournal.getChunkSize(), mFileLength);
+    }
+
+    /**
+     * 在校验线程中记录已经写入完成的分块，上一次记录还没有完成时忽略
+     *
+     * @param pending 还没有写入的区间，每个区间为{开始位置, 结束位置}，和这些区间重叠的分块不记录
+     */
+    void recordAsync(final List<long[]> pending) {
+        if (!isRecording.compareAndSet(false, true)) {
+            return;
+        }
+        boolean submitted = ExecutorManager.getInstance().executeVerify(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    recordChunks(pending);
+                } catch (IOException e) {
+                    Log.w(TAG, "读取文件失败，下次再记录分块\n" + e.getMessage());
+                } finally {
+                    isRecording.set(false);
+                }
+            }
+        });
+        if (!submitted) {
+            isRecording.set(false);
+        }
+    }
+
+    private synchronized void recordChunks(List<long[]> pending) throws IOException {
+        RandomAccessFile raf = null;
+        try {
+            for (int i = 0, num = mJournal.getChunkNum(); i < num; i++) {
+                if (mJournal.hasChunkCrc(i) || isPending(i, pending)) {
+                    continue;
+                }
+                if (raf == null) {
+                    raf = new RandomAccessFile(mFile, "r");
+                }
+                mJournal.writeChunkCrc(i, computeCrc(raf, i));
+            }
+        } finally {
+            if (raf != null) {
+                raf.close();
+            }
+        }
+    }
+
+    private boolean isPending(int index, List<long[]> pending) {
+        long start = getChunkStart(index), end = getChunkEnd(index);
+        for (long[] range : pending) {
+            if (start < range[1] && range[0] < end) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 重新计算分块的crc并记录，用于分块重新下载后
+     */
+    synchronized void record(int index) throws IOException {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(mFile, "r");
+            mJournal.writeChunkCrc(index, computeCrc(raf, index));
+        } finally {
+            if (raf != null) {
+                raf.close();
+            }
+        }
+    }
+
+    /**
+     * 校验所有已记录的分块，没有记录的分块不校验，内容不一致的分块的记录会被清除
+     *
+     * @return 内容和记录不一致的分块序号
+     */
+    synchronized List<Integer> findCorruptChunks() throws IOException {
+        List<Integer> corrupt = new ArrayList<>();
+        RandomAccessFile raf = null;
+        try {
+            for (int i = 0, num = mJournal.getChunkNum(); i < num; i++) {
+                if (!mJournal.hasChunkCrc(i)) {
+                    continue;
+                }
+                if (raf == null) {
+                    raf = new RandomAccessFile(mFile, "r");
+                }
+                if (computeCrc(raf, i) != mJournal.getChunkCrc(i)) {
+                    mJournal.clearChunkCrc(i);
+                    corrupt.add(i);
+                }
+            }
+        } finally {
+            if (raf != null) {
+                raf.close();
+            }
+        }
+        return corrupt;
+    }
+
+    private int computeCrc(RandomAccessFile raf, int index) throws IOException {
+        if (mReadBuffer == null) {
+            mReadBuffer = new byte[READ_SIZE];
+        }
+        CRC32 crc = new CRC32();
+        long position = getChunkStart(index), end = getChunkEnd(index);
+        raf.seek(position);
+        while (position < end) {
+            int len = raf.read(mReadBuffer, 0, (int) Math.min(READ_SIZE, end - position));
+            if (len == -1) {
+                //文件长度不足，计算结果和已记录的crc不一致
+                break;
+            }
+            crc.update(mReadBuffer, 0, len);
+            position += len;
+        }
+        return (int) crc.getValue();
+    }
+}
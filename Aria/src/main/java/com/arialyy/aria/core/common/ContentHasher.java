@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 文件内容校验器，下载过程中按文件顺序计算md5，完成时只需要计算剩余的部分，不需要再完整读取一次文件。
+ * 正好写入在已计算位置的数据直接在写入线程中计算；其它线程写入的数据在前面的数据完成后，
+ * 由校验线程从文件中读取计算，这时数据通常还在系统缓存中。
+ * md5无法由各个区间的结果合并，恢复下载时已经下载的数据也需要从文件中读取计算
+ */
+public class ContentHasher {
+    private static final String TAG = "ContentHasher";
+    private static final int READ_SIZE = 64 * 1024;
+    private final File mFile;
+    private final long mFileLength;
+    private final MessageDigest mDigest;
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final AtomicBoolean isCatchingUp = new AtomicBoolean(false);
+    /**
+     * 已经计算的长度，该位置之前的数据都已经计算
+     */
+    private long mFrontier = 0;
+    private ByteBuffer mReadBuffer;
+
+    private ContentHasher(File file, long fileLength, MessageDigest digest) {
+        mFile = file;
+        mFileLength = fileLength;
+        mDigest = digest;
+    }
+
+    /**
+     * 创建校验器
+     *
+     * @return 系统不支持md5时返回null
+     */
+    public static ContentHasher create(File file, long fileLength) {
+        try {
+            return new ContentHasher(file, fileLength, MessageDigest.getInstance("MD5"));
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(TAG, "不支持md5校验");
+            return null;
+        }
+    }
+
+    /**
+     * 数据写入文件后调用，写入位置正好是已计算的位置时直接计算，否则等待后台读取文件计算。
+     * 其它线程正在计算时不等待，避免阻塞写入线程
+     *
+     * @param data     已经写入文件的数据
+     * @param position 数据在文件中的位置
+     */
+    public void update(ByteBuffer data, long position) {
+        if (!mLock.tryLock()) {
+            return;
+        }
+        try {
+            if (position == mFrontier) {
+                mFrontier += data.remaining();
+                mDigest.update(data);
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * 在校验线程中计算已经连续写入的数据，上一次计算还没有完成时忽略
+     *
+     * @param end 该位置之前的数据都已经写入文件
+     */
+    public void catchUpAsync(final long end) {
+        if (!isCatchingUp.compareAndSet(false, true)) {
+            return;
+        }
+        boolean submitted = ExecutorManager.getInstance().executeVerify(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    catchUp(end);
+                } catch (IOException e) {
+                    Log.w(TAG, "读取文件失败，完成时再计算\n" + e.getMessage());
+                } finally {
+                    isCatchingUp.set(false);
+                }
+            }
+        });
+        if (!submitted) {
+            isCatchingUp.set(false);
+        }
+    }
+
+    /**
+     * 所有数据写入完成后调用，计算剩余的数据并和服务器返回的md5比较
+     *
+     * @param md5 服务器返回的md5，支持16进制和Content-MD5的Base64格式
+     * @return {@code true} 校验通过
+     */
+    public boolean verify(String md5) throws IOException {
+        catchUp(mFileLength);
+        mLock.lock();
+        try {
+            if (mFrontier != mFileLength) {
+                return false;
+            }
+            byte[] digest = mDigest.digest();
+            String hex = String.format("%032x", new BigInteger(1, digest));
+            String base64 = Base64.encodeToString(digest, Base64.NO_WRAP);
+            md5 = md5.trim();
+            return hex.equalsIgnoreCase(md5) || md5.equals(base64);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * 从文件中读取已计算位置到指定位置的数据并计算
+     */
+    private void catchUp(long end) throws IOException {
+        mLock.lock();
+        RandomAccessFile raf = null;
+        try {
+            end = Math.min(end, mFileLength);
+            if (end <= mFrontier) {
+                return;
+            }
+            if (mReadBuffer == null) {
+                mReadBuffer = ByteBuffer.allocate(READ_SIZE);
+            }
+            raf = new RandomAccessFile(mFile, "r");
+            FileChannel channel = raf.getChannel();
+            while (mFrontier < end) {
+                mReadBuffer.clear();
+                mReadBuffer.limit((int) Math.min(READ_SIZE, end - mFrontier));
+                int len = channel.read(mReadBuffer, mFrontier);
+                if (len <= 0) {
+                    break;
+                }
+                mReadBuffer.flip();
+                mDigest.update(mReadBuffer);
+                mFrontier += len;
+            }
+        } finally {
+            if (raf != null) {
+                raf.close();
+            }
+            mLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import android.util.Log;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 全局线程池，所有任务共用，避免每个任务都创建线程池和线程。
+ * 流程线程池执行任务流程和队列控制操作，如获取文件信息、启动线程、等待任务，不会和下载、上传线程抢占线程；
+ * 工作线程池执行下载、上传线程，线程数有上限，超出的线程会排队等待；
+ * 断点记录线程池只执行将数据同步到磁盘的操作，不会阻塞读取线程；
+ * 校验线程只有一条，执行计算md5、分块校验值等需要长时间读取文件的操作，不会推迟断点记录；
+ * 定时器只有一条线程，所有任务的进度刷新、断点记录和失败重试都由它计时，线程数不会随任务数增加。
+ * 空闲的线程会自动回收，调用{@link #shutdown()}后再次使用时会重新创建线程池。
+ * 下载、上传线程默认在工作线程池中执行，运行在JVM上需要同时执行大量线程时，
+ * 可以通过{@link #useVirtualThread()}或{@link #setSegmentExecutor(Executor)}更换执行方式
+ */
+public class ExecutorManager {
+    private static final String TAG = "ExecutorManager";
+    /**
+     * 工作线程的最大数量
+     */
+    private static final int MAX_WORKER_NUM = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+    /**
+     * 流程线程的最大数量
+     */
+    private static final int MAX_FLOW_NUM = 8;
+    /**
+     * 断点记录线程的最大数量
+     */
+    private static final int MAX_CHECKPOINT_NUM = 2;
+    /**
+     * 空闲线程的存活时间，单位：秒
+     */
+    private static final long KEEP_ALIVE_TIME = 30;
+    private static volatile ExecutorManager INSTANCE = null;
+    private ThreadPoolExecutor mWorkerPool;
+    private ThreadPoolExecutor mFlowPool;
+    private ThreadPoolExecutor mCheckpointPool;
+    private ThreadPoolExecutor mVerifyPool;
+    private ScheduledThreadPoolExecutor mTimer;
+    /**
+     * 下载、上传线程的执行器，为null时使用工作线程池
+     */
+    private Executor mSegmentExecutor;
+    /**
+     * 执行器是否由{@link #useVirtualThread()}创建，关闭时需要一起关闭
+     */
+    private boolean isOwnSegmentExecutor = false;
+
+    private ExecutorManager() {
+
+    }
+
+    public static ExecutorManager getInstance() {
+        if (INSTANCE == null) {
+            synchronized (ExecutorManager.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new ExecutorManager();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * 在工作线程中执行
+     *
+     * @return {@code false} 线程池已经关闭
+     */
+    public boolean execute(Runnable runnable) {
+        return execute(getWorkerPool(), runnable);
+    }
+
+    /**
+     * 在流程线程中执行，用于任务流程和队列控制操作，不占用下载、上传线程的位置
+     *
+     * @return {@code false} 线程池已经关闭
+     */
+    public boolean executeFlow(Runnable runnable) {
+        return execute(getFlowPool(), runnable);
+    }
+
+    /**
+     * 执行下载、上传线程，设置了执行器时使用设置的执行器，否则在工作线程中执行
+     *
+     * @return {@code false} 线程池已经关闭
+     */
+    public boolean executeSegment(Runnable runnable) {
+        Executor executor;
+        synchronized (this) {
+            executor = mSegmentExecutor;
+        }
+        return executor == null ? execute(runnable) : execute(executor, runnable);
+    }
+
+    /**
+     * 设置下载、上传线程的执行器，线程在读取数据时会阻塞，执行器需要能同时执行所有线程，
+     * 否则超出的线程会等待前面的线程结束
+     *
+     * @param executor 为null时恢复使用工作线程池
+     */
+    public synchronized void setSegmentExecutor(Executor executor) {
+        shutdownSegmentExecutor();
+        mSegmentExecutor = executor;
+        isOwnSegmentExecutor = false;
+    }
+
+    /**
+     * 使用虚拟线程执行下载、上传线程，每个线程只占用很少的内存，适合在JVM上同时执行大量线程。
+     * 虚拟线程需要Java 21及以上版本，Android不支持
+     *
+     * @return {@code false} 当前运行环境不支持虚拟线程，继续使用工作线程池
+     */
+    public synchronized boolean useVirtualThread() {
+        if (isOwnSegmentExecutor) {
+            return true;
+        }
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            Executor executor = (Executor) method.invoke(null);
+            shutdownSegmentExecutor();
+            mSegmentExecutor = executor;
+            isOwnSegmentExecutor = true;
+            return true;
+        } catch (Exception e) {
+            Log.w(TAG, "当前运行环境不支持虚拟线程");
+            return false;
+        }
+    }
+
+    /**
+     * 在断点记录线程中执行
+     *
+     * @return {@code false} 线程池已经关闭
+     */
+    public boolean executeCheckpoint(Runnable runnable) {
+        return execute(getCheckpointPool(), runnable);
+    }
+
+    /**
+     * 在校验线程中执行，用于需要长时间读取文件的校验操作
+     *
+     * @return {@code false} 线程池已经关闭
+     */
+    public boolean executeVerify(Runnable runnable) {
+        return execute(getVerifyPool(), runnable);
+    }
+
+    /**
+     * 延迟执行，操作在定时器线程中执行，不能执行耗时操作
+     *
+     * @param delay 延迟时间，单位：毫秒
+     * @return 可以用于取消操作，定时器已经关闭时返回null
+     */
+    public ScheduledFuture<?> schedule(Runnable runnable, long delay) {
+        try {
+            return getTimer().schedule(runnable, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "定时器已经关闭");
+            return null;
+        }
+    }
+
+    /**
+     * 周期执行，操作在定时器线程中执行，不能执行耗时操作
+     *
+     * @param delay  第一次执行的延迟时间，单位：毫秒
+     * @param period 执行间隔，单位：毫秒
+     * @return 可以用于取消操作，定时器已经关闭时返回null
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable runnable, long delay, long period) {
+        try {
+            return getTimer().scheduleAtFixedRate(runnable, delay, period, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "定时器已经关闭");
+            return null;
+        }
+    }
+
+    /**
+     * 延迟后在工作线程中执行，用于耗时操作
+     *
+     * @param delay 延迟时间，单位：毫秒
+     * @return 可以用于取消操作，定时器已经关闭时返回null
+     */
+    public ScheduledFuture<?> executeDelayed(final Runnable runnable, long delay) {
+        return schedule(new Runnable() {
+            @Override
+            public void run() {
+                execute(runnable);
+            }
+        }, delay);
+    }
+
+    /**
+     * 延迟后执行下载、上传线程，用于线程重试
+     *
+     * @param delay 延迟时间，单位：毫秒
+     * @return 可以用于取消操作，定时器已经关闭时返回null
+     */
+    public ScheduledFuture<?> executeSegmentDelayed(final Runnable runnable, long delay) {
+        return schedule(new Runnable() {
+            @Override
+            public void run() {
+                executeSegment(runnable);
+            }
+        }, delay);
+    }
+
+    /**
+     * 取消定时操作，并移除定时器中已经取消的操作
+     */
+    public void cancel(ScheduledFuture<?> future) {
+        if (future == null) {
+            return;
+        }
+        future.cancel(false);
+        ThreadPoolExecutor timer;
+        synchronized (this) {
+            timer = mTimer;
+        }
+        if (timer != null) {
+            timer.purge();
+        }
+    }
+
+    /**
+     * 关闭线程池，已经提交的操作会继续执行完成
+     */
+    public synchronized void shutdown() {
+        if (mWorkerPool != null) {
+            mWorkerPool.shutdown();
+            mWorkerPool = null;
+        }
+        if (mFlowPool != null) {
+            mFlowPool.shutdown();
+            mFlowPool = null;
+        }
+        if (mCheckpointPool != null) {
+            mCheckpointPool.shutdown();
+            mCheckpointPool = null;
+        }
+        if (mVerifyPool != null) {
+            mVerifyPool.shutdown();
+            mVerifyPool = null;
+        }
+        if (mTimer != null) {
+            mTimer.shutdown();
+            mTimer = null;
+        }
+        shutdownSegmentExecutor();
+        mSegmentExecutor = null;
+        isOwnSegmentExecutor = false;
+    }
+
+    /**
+     * 关闭由{@link #useVirtualThread()}创建的执行器，外部设置的执行器由调用者关闭
+     */
+    private void shutdownSegmentExecutor() {
+        if (isOwnSegmentExecutor && mSegmentExecutor instanceof ExecutorService) {
+            ((ExecutorService) mSegmentExecutor).shutdown();
+        }
+    }
+
+    private boolean execute(Executor executor, Runnable runnable) {
+        try {
+            executor.execute(runnable);
+            return true;
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "线程池已经关闭");
+            return false;
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getWorkerPool() {
+        if (mWorkerPool == null) {
+            mWorkerPool = createPool(MAX_WORKER_NUM, "Aria-Worker-");
+        }
+        return mWorkerPool;
+    }
+
+    private synchronized ThreadPoolExecutor getFlowPool() {
+        if (mFlowPool == null) {
+            mFlowPool = createPool(MAX_FLOW_NUM, "Aria-Flow-");
+        }
+        return mFlowPool;
+    }
+
+    private synchronized ThreadPoolExecutor getCheckpointPool() {
+        if (mCheckpointPool == null) {
+            mCheckpointPool = createPool(MAX_CHECKPOINT_NUM, "Aria-Checkpoint-");
+        }
+        return mCheckpointPool;
+    }
+
+    private synchronized ThreadPoolExecutor getVerifyPool() {
+        if (mVerifyPool == null) {
+            mVerifyPool = createPool(1, "Aria-Verify-");
+        }
+        return mVerifyPool;
+    }
+
+    private synchronized ScheduledThreadPoolExecutor getTimer() {
+        if (mTimer == null) {
+            mTimer = new ScheduledThreadPoolExecutor(1, createThreadFactory("Aria-Timer-"));
+        }
+        return mTimer;
+    }
+
+    /**
+     * 创建线程池，核心线程数和最大线程数相同，任务超出线程数时进入队列排队，空闲的核心线程也会被回收
+     */
+    private ThreadPoolExecutor createPool(int size, String namePrefix) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), createThreadFactory(namePrefix));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private ThreadFactory createThreadFactory(final String namePrefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, namePrefix + mCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 文件写入器，同一个任务的所有线程共用一个FileChannel，按位置写入，不需要各自打开文件和seek。
+ * 写入时不同步到磁盘，只在断点记录时调用{@link #force()}
+ */
+public class FileChannelWriter {
+    private final File mFile;
+    private RandomAccessFile mRaf;
+    /**
+     * 写入时不加锁，只在打开和关闭文件时修改
+     */
+    private volatile FileChannel mChannel;
+    private int mRefCount = 0;
+    /**
+     * 同步锁，和对象锁分开，同步磁盘时不会阻塞写入线程；关闭文件时需要等待正在进行的同步完成
+     */
+    private final Object mForceLock = new Object();
+    /**
+     * 最近一次同步开始的时间
+     */
+    private long mLastForceTime = 0;
+    /**
+     * 内容校验器，为null时不计算
+     */
+    private volatile ContentHasher mHasher;
+
+    public FileChannelWriter(File file) {
+        mFile = file;
+    }
+
+    /**
+     * 线程开始写入前调用，第一个线程调用时打开文件
+     */
+    public synchronized void acquire() throws IOException {
+        if (mChannel == null) {
+            mRaf = new RandomAccessFile(mFile, "rw");
+            mChannel = mRaf.getChannel();
+        }
+        mRefCount++;
+    }
+
+    /**
+     * 线程结束写入后调用，所有线程都结束后关闭文件
+     */
+    public synchronized void release() {
+        if (mRefCount > 0) {
+            mRefCount--;
+        }
+        if (mRefCount == 0 && mChannel != null) {
+            synchronized (mForceLock) {
+                try {
+                    mChannel.force(false);
+                    mRaf.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                mChannel = null;
+                mRaf = null;
+            }
+        }
+    }
+
+    /**
+     * 将数据写入到文件的指定位置
+     *
+     * @param position 文件中的写入位置
+     */
+    public void write(byte[] buffer, int offset, int len, long position) throws IOException {
+        write(ByteBuffer.wrap(buffer, offset, len), position);
+    }
+
+    /**
+     * 将缓冲区中剩余的数据写入到文件的指定位置
+     *
+     * @param position 文件中的写入位置
+     */
+    public void write(ByteBuffer src, long position) throws IOException {
+        FileChannel channel = getChannel();
+        ContentHasher hasher = mHasher;
+        ByteBuffer written = hasher == null ? null : src.duplicate();
+        long start = position;
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+        if (hasher != null) {
+            hasher.update(written, start);
+        }
+    }
+
+    /**
+     * 设置内容校验器，写入的数据会交给校验器计算
+     */
+    public void setHasher(ContentHasher hasher) {
+        mHasher = hasher;
+    }
+
+    /**
+     * 将已经写入的数据同步到磁盘，多条线程同时调用时只会同步一次
+     */
+    public void force() throws IOException {
+        long requestTime = System.nanoTime();
+        synchronized (mForceLock) {
+            FileChannel channel = mChannel;
+            //等待期间其它线程已经开始了新的同步，调用前写入的数据已经包含在内
+            if (channel == null || mLastForceTime - requestTime > 0) {
+                return;
+            }
+            mLastForceTime = System.nanoTime();
+            channel.force(false);
+        }
+    }
+
+    private FileChannel getChannel() throws IOException {
+        FileChannel channel = mChannel;
+        if (channel == null) {
+            throw new IOException("文件【" + mFile.getPath() + "】没有打开");
+        }
+        return channel;
+    }
+}
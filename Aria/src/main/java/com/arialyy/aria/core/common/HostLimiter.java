@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arialyy.aria.core.common;
+
+import android.text.TextUtils;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 主机限制器，限制同一个主机同时打开的连接数，0表示不限制。
+ * 连接数由下载线程在打开连接前申请，上限由{@code DownloadConfig}设置并保存；
+ * 同一个主机同时执行的任务数由各自的执行池检查
+ */
+public class HostLimiter {
+    /**
+     * 等待连接时检查任务状态的间隔，单位：毫秒
+     */
+    private static final long WAIT_INTERVAL = 500;
+    private static volatile HostLimiter INSTANCE = null;
+    private final Map<String, Integer> mConnections = new HashMap<>();
+    /**
+     * 使用显式锁等待连接，虚拟线程等待时不会占用载体线程
+     */
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Condition mReleased = mLock.newCondition();
+    private volatile int mMaxConnections;
+
+    private HostLimiter() {
+    }
+
+    public static HostLimiter getInstance() {
+        if (INSTANCE == null) {
+            synchronized (HostLimiter.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new HostLimiter();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * 获取链接的主机名
+     *
+     * @return 链接无效时返回空字符串
+     */
+    public static String getHost(String url) {
+        if (TextUtils.isEmpty(url)) {
+            return "";
+        }
+        try {
+            String host = new URL(url).getHost();
+            return host == null ? "" : host.toLowerCase();
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+
+    /**
+     * 设置同一个主机同时打开的最大连接数，所有任务的下载线程共用
+     *
+     * @param maxNum 0表示不限制
+     */
+    public void setMaxConnectionsPerHost(int maxNum) {
+        mLock.lock();
+        try {
+            mMaxConnections = Math.max(0, maxNum);
+            mReleased.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return mMaxConnections;
+    }
+
+    /**
+     * 申请一个连接，主机的连接数达到上限时等待其它连接释放
+     *
+     * @param host  主机名
+     * @param state 任务状态，任务停止或取消时放弃等待
+     * @return true，申请成功，使用完成后需要调用{@link #releaseConnection(String)}；false，任务已经停止
+     */
+    public boolean acquireConnection(String host, StateConstance state) {
+        if (TextUtils.isEmpty(host)) {
+            return true;
+        }
+        mLock.lock();
+        try {
+            Integer num = mConnections.get(host);
+            while (mMaxConnections > 0 && num != null && num >= mMaxConnections) {
+                if (state.isStop || state.isCancel) {
+                    return false;
+                }
+                try {
+                    mReleased.await(WAIT_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                num = mConnections.get(host);
+            }
+            mConnections.put(host, num == null ? 1 : num + 1);
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * 释放连接
+     */
+    public void releaseConnection(String host) {
+        if (TextUtils.isEmpty(host)) {
+            return;
+        }
+        mLock.lock();
+        try {
+            Integer num = mConnections.get(host);
+            if (num == null) {
+                return;
+            }
+            if (num <= 1) {
+                mConnections.remove(host);
+            } else {
+                mConnections.put(host, num - 1);
+            }
+            mReleased.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+}
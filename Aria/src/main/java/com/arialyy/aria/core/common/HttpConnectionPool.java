@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import android.text.TextUtils;
+
+import com.arialyy.aria.core.AriaManager;
+import com.arialyy.aria.util.SSLContextUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Http连接池，下载线程、文件信息获取线程、上传线程共用。
+ * 空闲的keep-alive连接由系统的HttpURLConnection按主机缓存和回收，Aria不再单独维护连接池，也不主动回收空闲连接；
+ * 系统只在第一次创建连接时读取keep-alive的配置，因此需要在{@link AriaManager#init}时调用{@link #init()}。
+ * 只有使用同一个SSLSocketFactory的https连接才能被复用，同时TLS会话也缓存在SSLContext中，
+ * 因此所有连接必须共用同一个SSLSocketFactory。
+ */
+public class HttpConnectionPool {
+    /**
+     * 系统连接池保留的最大空闲连接数，Android上是所有主机共用的上限，不是每个主机的上限
+     */
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    /**
+     * 空闲连接的保留时间，单位：毫秒，由系统连接池回收超时的空闲连接
+     */
+    private static final long KEEP_ALIVE_DURATION = 60 * 1000;
+    private static volatile HttpConnectionPool INSTANCE = null;
+    private SSLSocketFactory mSSLFactory;
+    private String mCaAlias, mCaPath;
+
+    private HttpConnectionPool() {
+    }
+
+    /**
+     * 配置系统连接池，必须在建立第一个连接前调用，否则系统连接池已经初始化，配置不会生效。
+     * 这些配置是进程内全局的系统属性，会同时影响应用中其它使用HttpURLConnection的代码，
+     * 因此应用已经设置过的属性不会被覆盖
+     */
+    public static void init() {
+        setPropertyIfAbsent("http.keepAlive", "true");
+        setPropertyIfAbsent("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+        setPropertyIfAbsent("http.keepAliveDuration", String.valueOf(KEEP_ALIVE_DURATION));
+    }
+
+    private static void setPropertyIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    public static HttpConnectionPool getInstance() {
+        if (INSTANCE == null) {
+            synchronized (HttpConnectionPool.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new HttpConnectionPool();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * 打开连接，相同主机的连接会复用连接池中的空闲连接
+     */
+    public HttpURLConnection openConnection(URL url) throws IOException {
+        URLConnection urlConn = url.openConnection();
+        if (urlConn instanceof HttpsURLConnection) {
+            HttpsURLConnection conn = (HttpsURLConnection) urlConn;
+            conn.setSSLSocketFactory(getSSLSocketFactory());
+            conn.setHostnameVerifier(SSLContextUtil.HOSTNAME_VERIFIER);
+            return conn;
+        }
+        return (HttpURLConnection) urlConn;
+    }
+
+    /**
+     * 释放连接
+     *
+     * @param is       连接的输入流
+     * @param reusable {@code true} 响应数据已经读取完毕，关闭输入流后连接会回到连接池；
+     *                 {@code false} 响应数据没有读取完毕，连接无法复用，直接断开
+     */
+    public void release(HttpURLConnection conn, InputStream is, boolean reusable) {
+        try {
+            if (is != null) {
+                is.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            reusable = false;
+        }
+        if (!reusable && conn != null) {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * 获取共用的SSLSocketFactory，CA证书改变时才重新创建
+     */
+    private synchronized SSLSocketFactory getSSLSocketFactory() {
+        if (mSSLFactory == null
+                || !TextUtils.equals(mCaAlias, SSLContextUtil.CA_ALIAS)
+                || !TextUtils.equals(mCaPath, SSLContextUtil.CA_PATH)) {
+            mCaAlias = SSLContextUtil.CA_ALIAS;
+            mCaPath = SSLContextUtil.CA_PATH;
+            SSLContext sslContext = SSLContextUtil.getSSLContext(mCaAlias, mCaPath);
+            if (sslContext == null) {
+                sslContext = SSLContextUtil.getDefaultSLLContext();
+            }
+            mSSLFactory = sslContext.getSocketFactory();
+        }
+        return mSSLFactory;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+/**
+ * 线程进度计数器，每个计数器只由对应的线程写入，读取时不需要加锁。
+ * 计数器前后填充了无用字段，避免不同线程的计数器处于同一缓存行而相互影响
+ */
+final class ProgressCounter {
+    @SuppressWarnings("unused")
+    private long p1, p2, p3, p4, p5, p6, p7;
+    private volatile long mValue;
+    @SuppressWarnings("unused")
+    private long q1, q2, q3, q4, q5, q6, q7;
+
+    /**
+     * 增加进度，只能由计数器所属的线程调用
+     */
+    void add(long len) {
+        mValue = mValue + len;
+    }
+
+    long get() {
+        return mValue;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 限速器，使用令牌桶分别限制全局、下载队列、上传队列和单个任务的速度，速度单位为kb/s，0表示不限速。
+ * 线程每次写入数据前按顺序预约令牌，同一个任务的线程按预约顺序轮流获得带宽。
+ * 全局和队列的限速保存在下载和上传配置中，由{@link com.arialyy.aria.core.AriaManager}初始化时设置，
+ * 任务的限速保存在任务实体中
+ */
+public class SpeedLimiter {
+    private static volatile SpeedLimiter INSTANCE = null;
+    private final TokenBucket mGlobalBucket = new TokenBucket();
+    private final TokenBucket mDownloadBucket = new TokenBucket();
+    private final TokenBucket mUploadBucket = new TokenBucket();
+    private final Map<String, TokenBucket> mTaskBuckets = new ConcurrentHashMap<>();
+
+    private SpeedLimiter() {
+    }
+
+    public static SpeedLimiter getInstance() {
+        if (INSTANCE == null) {
+            synchronized (SpeedLimiter.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new SpeedLimiter();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * 设置所有下载和上传任务的总速度
+     *
+     * @param maxSpeed 单位为kb/s，0表示不限速
+     */
+    public void setGlobalMaxSpeed(int maxSpeed) {
+        mGlobalBucket.setMaxSpeed(maxSpeed);
+    }
+
+    /**
+     * 设置下载队列的总速度
+     *
+     * @param maxSpeed 单位为kb/s，0表示不限速
+     */
+    public void setDownloadMaxSpeed(int maxSpeed) {
+        mDownloadBucket.setMaxSpeed(maxSpeed);
+    }
+
+    /**
+     * 设置上传队列的总速度
+     *
+     * @param maxSpeed 单位为kb/s，0表示不限速
+     */
+    public void setUploadMaxSpeed(int maxSpeed) {
+        mUploadBucket.setMaxSpeed(maxSpeed);
+    }
+
+    public int getGlobalMaxSpeed() {
+        return mGlobalBucket.getMaxSpeed();
+    }
+
+    public int getDownloadMaxSpeed() {
+        return mDownloadBucket.getMaxSpeed();
+    }
+
+    public int getUploadMaxSpeed() {
+        return mUploadBucket.getMaxSpeed();
+    }
+
+    /**
+     * 修改正在执行的任务的速度，任务没有执行时不做处理
+     *
+     * @param key      任务的key
+     * @param maxSpeed 单位为kb/s，0表示不限速
+     */
+    public void setTaskMaxSpeed(String key, int maxSpeed) {
+        TokenBucket bucket = mTaskBuckets.get(key);
+        if (bucket != null) {
+            bucket.setMaxSpeed(maxSpeed);
+        }
+    }
+
+    /**
+     * 任务开始执行时注册任务的限速
+     */
+    void register(String key, int maxSpeed) {
+        TokenBucket bucket = new TokenBucket();
+        bucket.setMaxSpeed(maxSpeed);
+        mTaskBuckets.put(key, bucket);
+    }
+
+    /**
+     * 任务停止执行后移除任务的限速
+     */
+    void unregister(String key) {
+        mTaskBuckets.remove(key);
+    }
+
+    /**
+     * 写入数据前调用，超过限速时阻塞当前线程
+     *
+     * @param key        任务的key
+     * @param isDownload {@code true} 下载任务
+     * @param len        需要写入的数据长度
+     */
+    void acquire(String key, boolean isDownload, int len) throws InterruptedException {
+        TokenBucket taskBucket = mTaskBuckets.get(key);
+        long waitTime = mGlobalBucket.reserve(len);
+        waitTime = Math.max(waitTime, (isDownload ? mDownloadBucket : mUploadBucket).reserve(len));
+        if (taskBucket != null) {
+            waitTime = Math.max(waitTime, taskBucket.reserve(len));
+        }
+        if (waitTime > 0) {
+            Thread.sleep(waitTime / 1000000, (int) (waitTime % 1000000));
+        }
+    }
+
+    /**
+     * 令牌桶，通过预约时间实现，每次预约后下一个可用时间向后推移数据长度对应的时间，
+     * 空闲时最多积累{@link #MAX_BURST}的令牌
+     */
+    static class TokenBucket {
+        /**
+         * 最大突发时间，单位：纳秒
+         */
+        static final long MAX_BURST = 1000000000L;
+        private int mMaxSpeed = 0;
+        private long mNextFreeTime = 0;
+
+        synchronized void setMaxSpeed(int maxSpeed) {
+            mMaxSpeed = maxSpeed < 0 ? 0 : maxSpeed;
+            mNextFreeTime = currentTime();
+        }
+
+        synchronized int getMaxSpeed() {
+            return mMaxSpeed;
+        }
+
+        /**
+         * 预约令牌
+         *
+         * @return 需要等待的时间，单位：纳秒
+         */
+        synchronized long reserve(int len) {
+            if (mMaxSpeed <= 0) {
+                return 0;
+            }
+            long now = currentTime();
+            if (now - mNextFreeTime > MAX_BURST) {
+                mNextFreeTime = now - MAX_BURST;
+            }
+            long waitTime = mNextFreeTime - now;
+            mNextFreeTime += len * 1000000000L / (mMaxSpeed * 1024L);
+            return waitTime > 0 ? waitTime : 0;
+        }
+
+        /**
+         * 当前时间，单位：纳秒
+         */
+        long currentTime() {
+            return System.nanoTime();
+        }
+    }
+}
@@ -15,6 +15,10 @@
  */
 package com.arialyy.aria.core.common;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Created by lyy on 2017/1/18.
  * 下载状态常量
@@ -25,51 +29,93 @@ public class StateConstance {
     public int FAIL_NUM = 0;
     public int CONNECT_TIME_OUT; //连接超时时间
     public int READ_TIME_OUT; //流读取的超时时间
-    public int COMPLETE_THREAD_NUM = 0;
-    public int THREAD_NUM;
+    /**
+     * 已经完成的线程数，线程接管区间后几乎同时完成，需要原子操作，完成时使用{@link #completeThread()}
+     */
+    public final AtomicInteger COMPLETE_THREAD_NUM = new AtomicInteger(0);
+    public final AtomicInteger THREAD_NUM = new AtomicInteger(0);
+    /**
+     * 任务启动时已经完成的长度，实时进度请使用{@link #getCurrentLocation()}
+     */
     public long CURRENT_LOCATION = 0;
     public boolean isRunning = false;
     public boolean isCancel = false;
     public boolean isStop = false;
 
+    /**
+     * 各线程的进度计数器
+     */
+    private final List<ProgressCounter> mCounters = new CopyOnWriteArrayList<>();
+
     public StateConstance() {
     }
 
+    /**
+     * 创建线程的进度计数器
+     */
+    ProgressCounter createCounter() {
+        ProgressCounter counter = new ProgressCounter();
+        mCounters.add(counter);
+        return counter;
+    }
+
+    /**
+     * 获取当前进度，汇总所有线程的进度计数器
+     */
+    public long getCurrentLocation() {
+        long location = CURRENT_LOCATION;
+        for (ProgressCounter counter : mCounters) {
+            location += counter.get();
+        }
+        return location;
+    }
+
     public void resetState() {
         isCancel = false;
         isStop = false;
         isRunning = true;
         CURRENT_LOCATION = 0;
+        mCounters.clear();
         CANCEL_NUM = 0;
         STOP_NUM = 0;
         FAIL_NUM = 0;
+        COMPLETE_THREAD_NUM.set(0);
     }
 
     /**
      * 所有子线程是否都已经停止下载
      */
     public boolean isStop() {
-        return STOP_NUM == THREAD_NUM;
+        return STOP_NUM == THREAD_NUM.get();
     }
 
     /**
      * 所有子线程是否都已经下载失败
      */
     public boolean isFail() {
-        return FAIL_NUM + COMPLETE_THREAD_NUM >= THREAD_NUM;
+        return FAIL_NUM + COMPLETE_THREAD_NUM.get() >= THREAD_NUM.get();
     }
 
     /**
      * 所有子线程是否都已经完成下载
      */
     public boolean isComplete() {
-        return COMPLETE_THREAD_NUM == THREAD_NUM;
+        return COMPLETE_THREAD_NUM.get() == THREAD_NUM.get();
+    }
+
+    /**
+     * 子线程完成时调用，记录完成的线程数
+     *
+     * @return {@code true} 所有子线程都已经完成，只有最后一个完成的线程会返回true
+     */
+    public boolean completeThread() {
+        return COMPLETE_THREAD_NUM.incrementAndGet() == THREAD_NUM.get();
     }
 
     /**
      * 所有子线程是否都已经取消下载
      */
     public boolean isCancel() {
-        return CANCEL_NUM == THREAD_NUM;
+        return CANCEL_NUM == THREAD_NUM.get();
     }
 }
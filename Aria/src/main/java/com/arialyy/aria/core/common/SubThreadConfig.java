@@ -21,6 +21,10 @@ public class SubThreadConfig<TASK_ENTITY extends AbsTaskEntity> {
     //服务器地址
     public String URL;
     public String CONFIG_FILE_PATH;
+    //断点记录
+    public BreakpointJournal JOURNAL;
+    //文件写入器，同一个任务的线程共用
+    public FileChannelWriter FILE_WRITER;
     public TASK_ENTITY TASK_ENTITY;
     public boolean SUPPORT_BP = true;
 }
\ No newline at end of file
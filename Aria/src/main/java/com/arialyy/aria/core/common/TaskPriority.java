@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arialyy.aria.core.common;
+
+/**
+ * 任务优先级，数值越大优先级越高，可以使用这些常量之外的任意整数
+ */
+public final class TaskPriority {
+    /**
+     * 低优先级，适用于后台预加载等批量任务
+     */
+    public static final int LOW = 0;
+    /**
+     * 默认优先级
+     */
+    public static final int NORMAL = 5;
+    /**
+     * 高优先级，适用于用户正在等待的任务
+     */
+    public static final int HIGH = 10;
+
+    private TaskPriority() {
+
+    }
+}
@@ -22,7 +22,9 @@ import com.arialyy.aria.core.inf.AbsTask;
 import com.arialyy.aria.core.inf.AbsTaskEntity;
 import com.arialyy.aria.core.inf.IDownloadListener;
 import com.arialyy.aria.core.inf.IEntity;
+import com.arialyy.aria.core.scheduler.DownloadSchedulers;
 import com.arialyy.aria.core.scheduler.ISchedulers;
+import com.arialyy.aria.orm.DbEntity;
 
 import java.lang.ref.WeakReference;
 
@@ -89,7 +91,7 @@ class BaseDListener<ENTITY extends AbsEntity, TASK_ENTITY extends AbsTaskEntity<
             isFirst = false;
         }
         handleSpeed(speed);
-        sendInState2Target(ISchedulers.RUNNING);
+        postProgress();
         if (System.currentTimeMillis() - mLastSaveTime >= RUN_SAVE_INTERVAL) {
             saveData(IEntity.STATE_RUNNING, currentLocation);
             mLastSaveTime = System.currentTimeMillis();
@@ -133,6 +135,14 @@ class BaseDListener<ENTITY extends AbsEntity, TASK_ENTITY extends AbsTaskEntity<
         mEntity.setPercent((int) (mEntity.getCurrentProgress() * 100 / mEntity.getFileSize()));
     }
 
+    /**
+     * 将任务进度发送给调度器，进度由调度器合并后统一回调，不再为每次进度发送消息
+     */
+    private void postProgress() {
+        ISchedulers schedulers = DownloadSchedulers.getInstance();
+        schedulers.postProgress(mTask);
+    }
+
     /**
      * 将任务状态发送给下载器
      *
@@ -154,14 +164,19 @@ class BaseDListener<ENTITY extends AbsEntity, TASK_ENTITY extends AbsTaskEntity<
             mEntity.setState(state);
             mEntity.setCompleteTime(System.currentTimeMillis());
             mEntity.setCurrentProgress(mEntity.getFileSize());
-            mEntity.update();
+            mEntity.updateLater();
         } else {
             mEntity.setState(state);
             if (location != -1) {
                 mEntity.setCurrentProgress(location);
             }
-            mEntity.update();
+            mEntity.updateLater();
+        }
+        mTaskEntity.updateLater();
+        //任务进入终止状态时立即写入，执行中的状态由延迟写入队列合并写入
+        if (state != IEntity.STATE_RUNNING && state != IEntity.STATE_PRE
+                && state != IEntity.STATE_POST_PRE) {
+            DbEntity.flushPending();
         }
-        mTaskEntity.update();
     }
 }
\ No newline at end of file
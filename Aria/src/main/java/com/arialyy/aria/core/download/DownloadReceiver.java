@@ -91,6 +91,16 @@ public class DownloadReceiver extends AbsReceiver {
         return this;
     }
 
+    /**
+     * 设置当前类接收任务进度的最小间隔，默认1000毫秒，间隔内同一个任务只回调最新的进度
+     *
+     * @param interval 刷新间隔，单位：毫秒
+     */
+    public DownloadReceiver setProgressInterval(long interval) {
+        DownloadSchedulers.getInstance().setProgressInterval(obj, interval);
+        return this;
+    }
+
     /**
      * 取消注册
      */
@@ -148,6 +158,22 @@ public class DownloadReceiver extends AbsReceiver {
                 "false");
     }
 
+    /**
+     * 分页获取普通下载任务列表
+     *
+     * @param page 页码，从1开始
+     * @param num  每页数量
+     */
+    @Override
+    public List<DownloadEntity> getSimpleTaskList(int page, int num) {
+        CheckUtil.checkPageParams(page, num);
+        return DbEntity.query(DownloadEntity.class)
+                .where("isGroupChild=? and downloadPath!=''", "false")
+                .limit(num)
+                .offset((page - 1) * num)
+                .list();
+    }
+
     /**
      * 停止所有正在下载的任务，并清空等待队列。
      */
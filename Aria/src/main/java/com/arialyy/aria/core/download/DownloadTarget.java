@@ -18,6 +18,8 @@ package com.arialyy.aria.core.download;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
+import com.arialyy.aria.core.common.SpeedLimiter;
+import com.arialyy.aria.core.common.TaskPriority;
 import com.arialyy.aria.core.inf.AbsDownloadTarget;
 import com.arialyy.aria.core.inf.IEntity;
 import com.arialyy.aria.core.queue.DownloadTaskQueue;
@@ -152,6 +154,39 @@ public class DownloadTarget
         return this;
     }
 
+    /**
+     * 设置任务的最大下载速度，任务正在下载时立即生效
+     *
+     * @param maxSpeed 单位为kb/s，0表示不限速
+     */
+    public DownloadTarget setMaxSpeed(int maxSpeed) {
+        mTaskEntity.maxSpeed = maxSpeed;
+        mTaskEntity.update();
+        DownloadTask task = DownloadTaskQueue.getInstance().getTask(mEntity.getKey());
+        if (task != null) {
+            task.getTaskEntity().maxSpeed = maxSpeed;
+        }
+        SpeedLimiter.getInstance().setTaskMaxSpeed(mEntity.getKey(), maxSpeed);
+        return this;
+    }
+
+    /**
+     * 设置任务优先级，执行队列已满时，优先级高的等待任务先执行，等待时间较长的任务会逐渐提升优先级。
+     * 优先级比正在执行的任务高出较多的任务启动时，会抢占该任务
+     *
+     * @param priority 数值越大优先级越高，可以使用{@link TaskPriority}中的常量
+     */
+    public DownloadTarget setPriority(int priority) {
+        mTaskEntity.priority = priority;
+        mTaskEntity.update();
+        DownloadTask task = DownloadTaskQueue.getInstance().getTask(mEntity.getKey());
+        if (task != null) {
+            task.getTaskEntity().priority = priority;
+            DownloadTaskQueue.getInstance().updateTaskPriority(task);
+        }
+        return this;
+    }
+
     public DownloadEntity getDownloadEntity() {
         return mEntity;
     }
@@ -15,7 +15,9 @@
  */
 package com.arialyy.aria.core.download;
 
+import com.arialyy.aria.core.common.TaskPriority;
 import com.arialyy.aria.core.inf.AbsNormalTaskEntity;
+import com.arialyy.aria.orm.Index;
 import com.arialyy.aria.orm.OneToOne;
 
 /**
@@ -35,6 +37,7 @@ public class DownloadTaskEntity extends AbsNormalTaskEntity<DownloadEntity> {
     /**
      * 所属的任务组组名，如果不属于任务组，则为null
      */
+    @Index(value = "groupName_state", columns = "state")
     public String groupName = "";
 
     /**
@@ -42,6 +45,11 @@ public class DownloadTaskEntity extends AbsNormalTaskEntity<DownloadEntity> {
      */
     public boolean isGroupTask = false;
 
+    /**
+     * 任务优先级，数值越大越先执行，默认为{@link TaskPriority#NORMAL}
+     */
+    public int priority = TaskPriority.NORMAL;
+
     public DownloadTaskEntity() {
     }
 
@@ -15,20 +15,15 @@
  */
 package com.arialyy.aria.core.download.downloader;
 
+import com.arialyy.aria.core.common.HttpConnectionPool;
 import com.arialyy.aria.core.download.DownloadTaskEntity;
-import com.arialyy.aria.util.SSLContextUtil;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.ProtocolException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.Set;
 
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
-
 /**
  * Created by lyy on 2017/1/18.
  * 链接帮助类
@@ -36,27 +31,12 @@ import javax.net.ssl.SSLSocketFactory;
 class ConnectionHelp {
 
     /**
-     * 处理链接
+     * 处理链接，连接从共用的连接池中获取
      *
      * @throws IOException
      */
     static HttpURLConnection handleConnection(URL url) throws IOException {
-        HttpURLConnection conn;
-        URLConnection urlConn = url.openConnection();
-        if (urlConn instanceof HttpsURLConnection) {
-            conn = (HttpsURLConnection) urlConn;
-            SSLContext sslContext =
-                    SSLContextUtil.getSSLContext(SSLContextUtil.CA_ALIAS, SSLContextUtil.CA_PATH);
-            if (sslContext == null) {
-                sslContext = SSLContextUtil.getDefaultSLLContext();
-            }
-            SSLSocketFactory ssf = sslContext.getSocketFactory();
-            ((HttpsURLConnection) conn).setSSLSocketFactory(ssf);
-            ((HttpsURLConnection) conn).setHostnameVerifier(SSLContextUtil.HOSTNAME_VERIFIER);
-        } else {
-            conn = (HttpURLConnection) urlConn;
-        }
-        return conn;
+        return HttpConnectionPool.getInstance().openConnection(url);
     }
 
     /**
@@ -17,19 +17,28 @@ package com.arialyy.aria.core.download.downloader;
 
 import android.util.Log;
 
+import com.arialyy.aria.core.AriaManager;
 import com.arialyy.aria.core.common.AbsFileer;
 import com.arialyy.aria.core.common.AbsThreadTask;
+import com.arialyy.aria.core.common.BufferPool;
+import com.arialyy.aria.core.common.FileChannelWriter;
+import com.arialyy.aria.core.common.HostLimiter;
+import com.arialyy.aria.core.common.HttpConnectionPool;
 import com.arialyy.aria.core.common.SubThreadConfig;
 import com.arialyy.aria.core.download.DownloadEntity;
 import com.arialyy.aria.core.download.DownloadTaskEntity;
 import com.arialyy.aria.core.inf.IDownloadListener;
 import com.arialyy.aria.orm.DbEntity;
-import com.arialyy.aria.util.BufferedRandomAccessFile;
 import com.arialyy.aria.util.CommonUtil;
 import com.arialyy.aria.util.ErrorHelp;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
 
 /**
  * Created by AriaL on 2017/7/1.
@@ -69,9 +78,9 @@ class Downloader extends AbsFileer<DownloadEntity, DownloadTaskEntity> {
     @Override
     protected void handleNewTask() {
         CommonUtil.createFile(mTempFile.getPath());
-        BufferedRandomAccessFile file = null;
+        RandomAccessFile file = null;
         try {
-            file = new BufferedRandomAccessFile(new File(mTempFile.getPath()), "rwd", 8192);
+            file = new RandomAccessFile(new File(mTempFile.getPath()), "rw");
             //设置文件长度
             file.setLength(mEntity.getFileSize());
         } catch (IOException e) {
@@ -92,6 +101,64 @@ class Downloader extends AbsFileer<DownloadEntity, DownloadTaskEntity> {
         }
     }
 
+    /**
+     * 使用Range请求重新下载损坏的分块
+     */
+    @Override
+    protected boolean repairRange(FileChannelWriter writer, long start, long end) throws IOException {
+        String url = mEntity.isRedirect() ? mEntity.getRedirectUrl() : mEntity.getUrl();
+        String host = HostLimiter.getHost(url);
+        if (!HostLimiter.getInstance().acquireConnection(host, mConstance)) {
+            //任务已经停止，由调用者处理
+            return true;
+        }
+        HttpURLConnection conn = null;
+        InputStream is = null;
+        byte[] buffer = null;
+        boolean isStreamEnd = false;
+        boolean hasWriter = false;
+        try {
+            conn = ConnectionHelp.handleConnection(new URL(CommonUtil.convertUrl(url)));
+            conn.setRequestProperty("Range", "bytes=" + start + "-" + (end - 1));
+            conn = ConnectionHelp.setConnectParam(mTaskEntity, conn);
+            conn.setConnectTimeout(AriaManager.getInstance().getDownloadConfig().getConnectTimeOut());
+            conn.setReadTimeout(AriaManager.getInstance().getDownloadConfig().getIOTimeOut());
+            //服务器忽略Range时返回的是整个文件，不能写入
+            if (conn.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                throw new IOException("服务器不支持Range请求，code：" + conn.getResponseCode());
+            }
+            is = conn.getInputStream();
+            writer.acquire();
+            hasWriter = true;
+            buffer = BufferPool.getInstance().acquire();
+            ByteBuffer data = ByteBuffer.wrap(buffer);
+            long position = start;
+            int len;
+            while (position < end && (len = is.read(buffer)) != -1) {
+                if (mConstance.isStop || mConstance.isCancel) {
+                    return true;
+                }
+                len = (int) Math.min(len, end - position);
+                data.clear();
+                data.limit(len);
+                writer.write(data, position);
+                position += len;
+            }
+            if (position < end) {
+                throw new IOException("分块数据不完整");
+            }
+            isStreamEnd = is.read() == -1;
+            return true;
+        } finally {
+            if (hasWriter) {
+                writer.release();
+            }
+            BufferPool.getInstance().release(buffer);
+            HttpConnectionPool.getInstance().release(conn, is, isStreamEnd);
+            HostLimiter.getInstance().releaseConnection(host);
+        }
+    }
+
     @Override
     protected AbsThreadTask selectThreadTask(SubThreadConfig<DownloadTaskEntity> config) {
 
@@ -106,4 +173,9 @@ class Downloader extends AbsFileer<DownloadEntity, DownloadTaskEntity> {
         mListener.onFail(false);
         ErrorHelp.saveError("", mEntity, "", errorMsg);
     }
+
+    @Override
+    protected String getTaskType() {
+        return "HTTP_DOWNLOAD";
+    }
 }
@@ -139,7 +139,7 @@ class HttpFileInfoThread implements Runnable {
             return;
         }
         String cookies = conn.getHeaderField("Set-Cookie");
-        conn = (HttpURLConnection) new URL(newUrl).openConnection();
+        conn = ConnectionHelp.handleConnection(new URL(newUrl));
         conn = ConnectionHelp.setConnectParam(mTaskEntity, conn);
         conn.setRequestProperty("Cookie", cookies);
         conn.setRequestProperty("Range", "bytes=" + 0 + "-");
@@ -18,20 +18,24 @@ package com.arialyy.aria.core.download.downloader;
 import android.util.Log;
 
 import com.arialyy.aria.core.common.AbsThreadTask;
+import com.arialyy.aria.core.common.BufferPool;
+import com.arialyy.aria.core.common.FileChannelWriter;
+import com.arialyy.aria.core.common.HostLimiter;
+import com.arialyy.aria.core.common.HttpConnectionPool;
 import com.arialyy.aria.core.common.StateConstance;
 import com.arialyy.aria.core.common.SubThreadConfig;
 import com.arialyy.aria.core.download.DownloadEntity;
 import com.arialyy.aria.core.download.DownloadTaskEntity;
 import com.arialyy.aria.core.inf.IDownloadListener;
-import com.arialyy.aria.util.BufferedRandomAccessFile;
 import com.arialyy.aria.util.CommonUtil;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 
 /**
  * Created by lyy on 2017/1/18.
@@ -47,11 +51,34 @@ final class HttpThreadTask extends AbsThreadTask<DownloadEntity, DownloadTaskEnt
 
     @Override
     public void run() {
+        //线程完成自己的区间后，会继续下载从其它线程接管的区间
+        boolean hasNextRange;
+        do {
+            hasNextRange = download();
+        } while (hasNextRange);
+    }
+
+    /**
+     * 下载当前区间
+     *
+     * @return {@code true} 已经接管了新的区间，需要继续下载
+     */
+    private boolean download() {
         HttpURLConnection conn = null;
-        BufferedInputStream is = null;
-        BufferedRandomAccessFile file = null;
+        InputStream is = null;
+        FileChannelWriter writer = null;
+        byte[] buffer = null;
+        //响应数据是否已经读取完毕，读取完毕的连接可以放回连接池复用
+        boolean isStreamEnd = false;
+        String host = HostLimiter.getHost(mConfig.URL);
+        boolean hasConnection = false;
         try {
             URL url = new URL(CommonUtil.convertUrl(mConfig.URL));
+            //主机的连接数达到上限时，等待其它线程释放连接
+            if (!HostLimiter.getInstance().acquireConnection(host, STATE)) {
+                return false;
+            }
+            hasConnection = true;
             conn = ConnectionHelp.handleConnection(url);
             if (mConfig.SUPPORT_BP) {
                 Log.d(TAG, "任务【"
@@ -72,30 +99,50 @@ final class HttpThreadTask extends AbsThreadTask<DownloadEntity, DownloadTaskEnt
             conn = ConnectionHelp.setConnectParam(mConfig.TASK_ENTITY, conn);
             conn.setConnectTimeout(STATE.CONNECT_TIME_OUT);
             conn.setReadTimeout(STATE.READ_TIME_OUT);  //设置读取流的等待时间,必须设置该参数
-            //is = conn.getInputStream();
-            is = new BufferedInputStream(conn.getInputStream());
-            //创建可设置位置的文件
-            file = new BufferedRandomAccessFile(mConfig.TEMP_FILE, "rwd", mBufSize);
-            //设置每条线程写入文件的位置
-            file.seek(mConfig.START_LOCATION);
-            byte[] buffer = new byte[mBufSize];
+            //直接读取到缓冲区中，不再经过BufferedInputStream复制
+            is = conn.getInputStream();
+            //所有线程共用一个文件写入器，按位置写入
+            mConfig.FILE_WRITER.acquire();
+            writer = mConfig.FILE_WRITER;
+            buffer = BufferPool.getInstance().acquire();
+            //复用同一个ByteBuffer包装缓冲区，写入时不需要每次新建
+            ByteBuffer data = ByteBuffer.wrap(buffer);
             int len;
             //当前子线程的下载位置
             mChildCurrentLocation = mConfig.START_LOCATION;
-            while ((len = is.read(buffer)) != -1) {
+            resetClaimLocation();
+            while (true) {
+                len = is.read(buffer);
+                if (len == -1) {
+                    isStreamEnd = true;
+                    break;
+                }
                 if (STATE.isCancel) break;
                 if (STATE.isStop) break;
-                if (mSleepTime > 0) Thread.sleep(mSleepTime);
-                file.write(buffer, 0, len);
+                if (mConfig.SUPPORT_BP) {
+                    //区间的后半段可能已经被其它线程接管
+                    len = claimRange(len);
+                    if (len <= 0) break;
+                }
+                limitSpeed(len);
+                data.clear();
+                data.limit(len);
+                writer.write(data, mChildCurrentLocation);
                 progress(len);
             }
-            if (STATE.isCancel || STATE.isStop) return;
+            if (STATE.isCancel || STATE.isStop) return false;
             //支持断点的处理
             if (mConfig.SUPPORT_BP) {
                 Log.i(TAG, "任务【" + mConfig.TEMP_FILE.getName() + "】线程__" + mConfig.THREAD_ID + "__下载完毕");
-                writeConfig(true, 1);
-                STATE.COMPLETE_THREAD_NUM++;
-                if (STATE.isComplete()) {
+                if (stealRange()) {
+                    return true;
+                }
+                checkpoint(true, mConfig.END_LOCATION);
+                if (STATE.completeThread()) {
+                    //校验失败时断点记录文件会被删除，不会以已完成的记录恢复
+                    if (!verifyContent()) {
+                        return false;
+                    }
                     File configFile = new File(mConfigFPath);
                     if (configFile.exists()) {
                         configFile.delete();
@@ -104,6 +151,9 @@ final class HttpThreadTask extends AbsThreadTask<DownloadEntity, DownloadTaskEnt
                     mListener.onComplete();
                 }
             } else {
+                if (!verifyContent()) {
+                    return false;
+                }
                 Log.i(TAG, "下载任务完成");
                 STATE.isRunning = false;
                 mListener.onComplete();
@@ -115,20 +165,16 @@ final class HttpThreadTask extends AbsThreadTask<DownloadEntity, DownloadTaskEnt
         } catch (Exception e) {
             fail(mChildCurrentLocation, "获取流失败", e);
         } finally {
-            try {
-                if (file != null) {
-                    file.close();
-                }
-                if (is != null) {
-                    is.close();
-                }
-                if (conn != null) {
-                    conn.disconnect();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
+            if (writer != null) {
+                writer.release();
+            }
+            BufferPool.getInstance().release(buffer);
+            HttpConnectionPool.getInstance().release(conn, is, isStreamEnd);
+            if (hasConnection) {
+                HostLimiter.getInstance().releaseConnection(host);
             }
         }
+        return false;
     }
 
     @Override
@@ -16,6 +16,7 @@
 
 package com.arialyy.aria.core.download.downloader;
 
+import com.arialyy.aria.core.common.ExecutorManager;
 import com.arialyy.aria.core.common.IUtil;
 import com.arialyy.aria.core.common.OnFileInfoCallback;
 import com.arialyy.aria.core.download.DownloadTaskEntity;
@@ -77,7 +78,7 @@ public class SimpleDownloadUtil implements IUtil, Runnable {
      */
     @Override
     public void start() {
-        new Thread(this).start();
+        ExecutorManager.getInstance().executeFlow(this);
     }
 
     @Override
@@ -94,7 +95,7 @@ public class SimpleDownloadUtil implements IUtil, Runnable {
     public void run() {
         mListener.onPre();
         if (mTaskEntity.getEntity().getFileSize() <= 1 || mTaskEntity.refreshInfo) {
-            new Thread(new HttpFileInfoThread(mTaskEntity, new OnFileInfoCallback() {
+            HttpFileInfoThread infoThread = new HttpFileInfoThread(mTaskEntity, new OnFileInfoCallback() {
                 @Override
                 public void onComplete(String url, int code) {
                     mDownloader.start();
@@ -104,7 +105,8 @@ public class SimpleDownloadUtil implements IUtil, Runnable {
                 public void onFail(String url, String errorMsg) {
                     failDownload(errorMsg);
                 }
-            })).start();
+            });
+            ExecutorManager.getInstance().executeFlow(infoThread);
         } else {
             mDownloader.start();
         }
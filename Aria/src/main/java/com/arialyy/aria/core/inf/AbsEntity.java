@@ -20,6 +20,7 @@ import android.os.Parcelable;
 
 import com.arialyy.aria.orm.DbEntity;
 import com.arialyy.aria.orm.Ignore;
+import com.arialyy.aria.orm.Index;
 
 /**
  * Created by AriaL on 2017/6/29.
@@ -70,6 +71,7 @@ public abstract class AbsEntity extends DbEntity implements IEntity, Parcelable
     /**
      * 服务器地址
      */
+    @Index
     private String url = "";
 
     /**
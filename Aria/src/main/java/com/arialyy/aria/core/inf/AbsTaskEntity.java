@@ -18,6 +18,7 @@ package com.arialyy.aria.core.inf;
 import com.arialyy.aria.core.common.RequestEnum;
 import com.arialyy.aria.orm.DbEntity;
 import com.arialyy.aria.orm.Ignore;
+import com.arialyy.aria.orm.Index;
 import com.arialyy.aria.orm.Primary;
 
 import java.util.HashMap;
@@ -50,6 +51,7 @@ public abstract class AbsTaskEntity<ENTITY extends AbsEntity> extends DbEntity {
     /**
      * 任务状态，和Entity的state同步
      */
+    @Index
     public int state = IEntity.STATE_WAIT;
 
     /**
@@ -114,6 +116,11 @@ public abstract class AbsTaskEntity<ENTITY extends AbsEntity> extends DbEntity {
      */
     public int code;
 
+    /**
+     * 任务的最大速度，单位为kb/s，0表示不限速
+     */
+    public int maxSpeed = 0;
+
     public abstract ENTITY getEntity();
 
     /**
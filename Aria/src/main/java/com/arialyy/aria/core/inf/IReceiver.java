@@ -53,4 +53,12 @@ public interface IReceiver<ENTITY extends IEntity> {
      * 获取任务列表
      */
     List<ENTITY> getSimpleTaskList();
+
+    /**
+     * 分页获取任务列表
+     *
+     * @param page 页码，从1开始
+     * @param num  每页数量
+     */
+    List<ENTITY> getSimpleTaskList(int page, int num);
 }
@@ -210,6 +210,7 @@ abstract class AbsTaskQueue<TASK extends AbsTask, TASK_ENTITY extends AbsTaskEnt
 
     @Override
     public TASK getNextTask() {
-        return mCachePool.pollTask();
+        //执行任务数达到上限的主机的任务继续等待
+        return mCachePool.pollTask(mExecutePool.getFullHosts());
     }
 }
@@ -20,14 +20,15 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import com.arialyy.aria.core.AriaManager;
+import com.arialyy.aria.core.common.HostLimiter;
 import com.arialyy.aria.core.download.DownloadTask;
 import com.arialyy.aria.core.download.DownloadTaskEntity;
+import com.arialyy.aria.core.inf.IEntity;
 import com.arialyy.aria.core.queue.pool.BaseCachePool;
 import com.arialyy.aria.core.queue.pool.BaseExecutePool;
 import com.arialyy.aria.core.queue.pool.DownloadSharePool;
 import com.arialyy.aria.core.scheduler.DownloadSchedulers;
 
-import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -38,6 +39,10 @@ import java.util.Set;
 public class DownloadTaskQueue
         extends AbsTaskQueue<DownloadTask, DownloadTaskEntity> {
     private static final String TAG = "DownloadTaskQueue";
+    /**
+     * 新任务的优先级至少比正在执行的任务高出该值时，才能抢占该任务
+     */
+    private static final int PREEMPT_GAP = 3;
     private static volatile DownloadTaskQueue INSTANCE = null;
 
     private DownloadTaskQueue() {
@@ -85,29 +90,105 @@ public class DownloadTaskQueue
                 }
             }
         }
-        int maxSize = AriaManager.getInstance().getDownloadConfig().getMaxTaskNum();
-        int currentSize = mExecutePool.size();
-        if (currentSize == 0 || currentSize < maxSize) {
-            startTask(task);
-        } else {
-            Set<DownloadTask> tempTasks = new LinkedHashSet<>();
-            for (int i = 0; i < maxSize; i++) {
-                DownloadTask oldTsk = mExecutePool.pollTask();
-                if (oldTsk != null && oldTsk.isRunning()) {
-                    if (i == maxSize - 1) {
-                        oldTsk.stopAndWait();
-                        mCachePool.putTaskToFirst(oldTsk);
-                        break;
-                    }
-                    tempTasks.add(oldTsk);
-                }
+        if (isPoolFull(task)) {
+            //最高优先级任务不受优先级差限制，停止优先级最低的任务
+            DownloadTask victim = selectVictim(task, true);
+            if (victim != null) {
+                evictTask(victim);
             }
-            startTask(task);
+        }
+        startTask(task);
+    }
 
-            for (DownloadTask temp : tempTasks) {
-                mExecutePool.putTask(temp);
+    /**
+     * 执行池已满时，尝试停止一个优先级比该任务低{@link #PREEMPT_GAP}以上的正在执行的任务，让该任务立即执行。
+     * 最高优先级任务不会被抢占，被抢占的任务回到缓存池中同优先级任务的队首
+     *
+     * @return true，抢占成功，任务已经启动
+     */
+    public boolean preemptTask(DownloadTask task) {
+        DownloadTask victim = selectVictim(task, false);
+        if (victim == null) {
+            return false;
+        }
+        Log.d(TAG, "任务【" + task.getKey() + "】抢占任务【" + victim.getKey() + "】");
+        evictTask(victim);
+        super.startTask(task);
+        return true;
+    }
+
+    /**
+     * 所有下载任务的启动都经过该方法，执行池已满或任务所属主机已满时，只能通过{@link #preemptTask(DownloadTask)}
+     * 抢占低优先级任务的位置，抢占失败的任务留在缓存池中等待
+     */
+    @Override
+    public void startTask(DownloadTask task) {
+        if (isPoolFull(task) && !preemptTask(task)) {
+            Log.d(TAG, "执行池已满，任务【" + task.getKey() + "】进入等待");
+            if (mCachePool.getTask(task.getKey()) == null) {
+                mCachePool.putTask(task);
             }
+            task.getTaskEntity().getEntity().setState(IEntity.STATE_WAIT);
+            return;
+        }
+        super.startTask(task);
+    }
+
+    /**
+     * 任务不在执行池中，并且执行池已满或任务所属主机执行的任务数已达上限
+     */
+    private boolean isPoolFull(DownloadTask task) {
+        if (mExecutePool.getTask(task.getKey()) != null) {
+            return false;
         }
+        return mExecutePool.size() >= AriaManager.getInstance().getDownloadConfig().getMaxTaskNum()
+                || mExecutePool.isHostFull(task);
+    }
+
+    /**
+     * 选出执行池中优先级最低的可抢占任务，最高优先级任务不会被选中
+     *
+     * @param ignoreGap true，不检查{@link #PREEMPT_GAP}
+     */
+    private DownloadTask selectVictim(DownloadTask task, boolean ignoreGap) {
+        int priority = task.getTaskEntity().priority;
+        //主机的任务数已达上限时，只能抢占同一个主机的任务
+        String host = mExecutePool.isHostFull(task) ? getHost(task) : null;
+        DownloadTask victim = null;
+        for (DownloadTask temp : mExecutePool.getAllTask().values()) {
+            if (temp.isHighestPriorityTask() || temp.getKey().equals(task.getKey())) {
+                continue;
+            }
+            if (host != null && !host.equals(getHost(temp))) {
+                continue;
+            }
+            int tempPriority = temp.getTaskEntity().priority;
+            if ((ignoreGap || priority - tempPriority >= PREEMPT_GAP) && (victim == null
+                    || tempPriority < victim.getTaskEntity().priority)) {
+                victim = temp;
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * 停止被抢占的任务，并以等待状态放回缓存池中同优先级任务的队首
+     */
+    private void evictTask(DownloadTask victim) {
+        mExecutePool.removeTask(victim);
+        victim.stopAndWait();
+        mCachePool.putTaskToFirst(victim);
+    }
+
+    private String getHost(DownloadTask task) {
+        return HostLimiter.getHost(task.getTaskEntity().getEntity().getUrl());
+    }
+
+    /**
+     * 任务优先级改变后，调整任务在缓存池中的位置
+     */
+    public void updateTaskPriority(DownloadTask task) {
+        mCachePool.updatePriority(task);
     }
 
     @Override
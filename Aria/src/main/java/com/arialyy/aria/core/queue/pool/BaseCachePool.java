@@ -20,32 +20,66 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import com.arialyy.aria.core.AriaManager;
+import com.arialyy.aria.core.common.TaskPriority;
 import com.arialyy.aria.core.inf.AbsTask;
 import com.arialyy.aria.util.CommonUtil;
 
-import java.util.LinkedHashSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Created by lyy on 2016/8/14.
- * 任务缓存池，所有下载任务最先缓存在这个池中
+ * 任务缓存池，所有下载任务最先缓存在这个池中。
+ * 每个优先级中，每个主机使用一个先进先出的队列，取出任务时选择有效优先级最高的任务，
+ * 有效优先级 = 任务优先级 + 等待时间 / {@link #AGING_INTERVAL}，等待时间长的低优先级任务不会一直得不到执行；
+ * 有效优先级相同时，选择最久没有取出过任务的主机，使各个主机轮流执行
  */
 public class BaseCachePool<TASK extends AbsTask> implements IPool<TASK> {
     private static final String TAG = "BaseCachePool";
-    private static final int MAX_NUM = Integer.MAX_VALUE;  //最大下载任务数
-    private static final long TIME_OUT = 1000;
+    /**
+     * 任务每等待该时间，有效优先级提升1，单位：毫秒
+     */
+    static final long AGING_INTERVAL = 30 * 1000;
     private Map<String, TASK> mCacheMap;
-    private LinkedBlockingQueue<TASK> mCacheQueue;
+    /**
+     * key为优先级，value为该优先级中每个主机的任务队列
+     */
+    private TreeMap<Integer, Map<String, TaskList<TASK>>> mLevels = new TreeMap<>();
+    /**
+     * 任务的排队信息，key为任务的hashKey
+     */
+    private Map<String, QueueInfo> mQueueInfo = new HashMap<>();
+    /**
+     * 主机最后一次取出任务的序号，主机没有排队的任务时移除
+     */
+    private Map<String, Long> mHostDispatch = new HashMap<>();
+    private long mDispatchNum = 0;
 
     BaseCachePool() {
-        mCacheQueue = new LinkedBlockingQueue<>(MAX_NUM);
         mCacheMap = new ConcurrentHashMap<>();
     }
 
+    /**
+     * 获取任务的优先级
+     *
+     * @return 默认为{@link TaskPriority#NORMAL}
+     */
+    protected int getPriority(TASK task) {
+        return TaskPriority.NORMAL;
+    }
+
+    /**
+     * 当前时间，用于计算任务的等待时间
+     */
+    long currentTime() {
+        return System.currentTimeMillis();
+    }
+
     /**
      * 获取被缓存的任务
      */
@@ -57,33 +91,62 @@ public class BaseCachePool<TASK extends AbsTask> implements IPool<TASK> {
      * 清除所有缓存的任务
      */
     public void clear() {
-        for (String key : mCacheMap.keySet()) {
-            TASK task = mCacheMap.get(key);
-            mCacheQueue.remove(task);
-            mCacheMap.remove(key);
+        synchronized (AriaManager.LOCK) {
+            mLevels.clear();
+            mQueueInfo.clear();
+            mCacheMap.clear();
+            mHostDispatch.clear();
+            mDispatchNum = 0;
         }
     }
 
     /**
-     * 将任务放在队首
+     * 将任务放在同优先级、同主机任务的队首，被抢占的任务使用该方法放回缓存池
      */
     public boolean putTaskToFirst(TASK task) {
-        if (mCacheQueue.isEmpty()) {
-            return putTask(task);
-        } else {
-            Set<TASK> temps = new LinkedHashSet<>();
-            temps.add(task);
-            for (int i = 0, len = size(); i < len; i++) {
-                TASK temp = pollTask();
-                temps.add(temp);
+        synchronized (AriaManager.LOCK) {
+            if (task == null) {
+                Log.e(TAG, "下载任务不能为空！！");
+                return false;
             }
-            for (TASK t : temps) {
-                putTask(t);
+            String key = CommonUtil.keyToHashKey(task.getKey());
+            QueueInfo old = remove(key);
+            QueueInfo info = new QueueInfo(getPriority(task), BaseExecutePool.getHost(task), currentTime());
+            TaskList<TASK> list = getQueue(info);
+            //队首任务的等待时间不能比队列中其它任务短
+            if (old != null) {
+                info.time = Math.min(info.time, old.time);
             }
+            String headKey = list.peekFirstKey();
+            if (headKey != null) {
+                info.time = Math.min(info.time, mQueueInfo.get(headKey).time);
+            }
+            list.addFirst(key, task);
+            mQueueInfo.put(key, info);
+            mCacheMap.put(key, task);
             return true;
         }
     }
 
+    /**
+     * 任务优先级改变后，将任务移动到新优先级的队列中，等待时间保持不变
+     */
+    public void updatePriority(TASK task) {
+        synchronized (AriaManager.LOCK) {
+            String key = CommonUtil.keyToHashKey(task.getKey());
+            QueueInfo old = mQueueInfo.get(key);
+            int priority = getPriority(task);
+            if (old == null || old.priority == priority) {
+                return;
+            }
+            remove(key);
+            QueueInfo info = new QueueInfo(priority, old.host, old.time);
+            getQueue(info).addLast(key, task);
+            mQueueInfo.put(key, info);
+            mCacheMap.put(key, task);
+        }
+    }
+
     @Override
     public boolean putTask(TASK task) {
         synchronized (AriaManager.LOCK) {
@@ -92,36 +155,64 @@ public class BaseCachePool<TASK extends AbsTask> implements IPool<TASK> {
                 return false;
             }
             String url = task.getKey();
-            if (mCacheQueue.contains(task)) {
+            String key = CommonUtil.keyToHashKey(url);
+            if (mQueueInfo.containsKey(key)) {
                 Log.w(TAG, "队列中已经包含了该任务，任务下载链接【" + url + "】");
                 return false;
-            } else {
-                boolean s = mCacheQueue.offer(task);
-                Log.d(TAG, "任务添加" + (s ? "成功" : "失败，【" + url + "】"));
-                if (s) {
-                    mCacheMap.put(CommonUtil.keyToHashKey(url), task);
-                }
-                return s;
             }
+            QueueInfo info = new QueueInfo(getPriority(task), BaseExecutePool.getHost(task), currentTime());
+            getQueue(info).addLast(key, task);
+            mQueueInfo.put(key, info);
+            Log.d(TAG, "任务添加成功");
+            mCacheMap.put(key, task);
+            return true;
         }
     }
 
     @Override
     public TASK pollTask() {
+        return pollTask(Collections.<String>emptySet());
+    }
+
+    /**
+     * 取出有效优先级最高的任务，有效优先级相同时选择最久没有取出过任务的主机
+     *
+     * @param excludeHosts 不能再执行任务的主机，这些主机的任务继续等待
+     */
+    public TASK pollTask(Set<String> excludeHosts) {
         synchronized (AriaManager.LOCK) {
-            try {
-                TASK task;
-                task = mCacheQueue.poll(TIME_OUT, TimeUnit.MICROSECONDS);
-                if (task != null) {
-                    String url = task.getKey();
-                    mCacheMap.remove(CommonUtil.keyToHashKey(url));
+            long now = currentTime();
+            String bestKey = null;
+            long bestPriority = Long.MIN_VALUE;
+            long bestDispatch = Long.MAX_VALUE;
+            //每个队列的队首任务等待时间最长，只需要比较各个队首任务
+            for (Map.Entry<Integer, Map<String, TaskList<TASK>>> level : mLevels.descendingMap()
+                    .entrySet()) {
+                for (Map.Entry<String, TaskList<TASK>> queue : level.getValue().entrySet()) {
+                    String host = queue.getKey();
+                    if (excludeHosts.contains(host)) {
+                        continue;
+                    }
+                    String key = queue.getValue().peekFirstKey();
+                    long priority = level.getKey() + (now - mQueueInfo.get(key).time) / AGING_INTERVAL;
+                    Long dispatch = mHostDispatch.get(host);
+                    long lastDispatch = dispatch == null ? -1 : dispatch;
+                    if (priority > bestPriority || (priority == bestPriority
+                            && lastDispatch < bestDispatch)) {
+                        bestPriority = priority;
+                        bestDispatch = lastDispatch;
+                        bestKey = key;
+                    }
                 }
-                return task;
-            } catch (InterruptedException e) {
-                e.printStackTrace();
             }
+            if (bestKey == null) {
+                return null;
+            }
+            mHostDispatch.put(mQueueInfo.get(bestKey).host, ++mDispatchNum);
+            TASK task = mCacheMap.remove(bestKey);
+            remove(bestKey);
+            return task;
         }
-        return null;
     }
 
     @Override
@@ -145,7 +236,7 @@ public class BaseCachePool<TASK extends AbsTask> implements IPool<TASK> {
             } else {
                 String key = CommonUtil.keyToHashKey(task.getKey());
                 mCacheMap.remove(key);
-                return mCacheQueue.remove(task);
+                return remove(key) != null;
             }
         }
     }
@@ -158,14 +249,87 @@ public class BaseCachePool<TASK extends AbsTask> implements IPool<TASK> {
                 return false;
             }
             String key = CommonUtil.keyToHashKey(downloadUrl);
-            TASK task = mCacheMap.get(key);
             mCacheMap.remove(key);
-            return mCacheQueue.remove(task);
+            return remove(key) != null;
         }
     }
 
     @Override
     public int size() {
-        return mCacheQueue.size();
+        synchronized (AriaManager.LOCK) {
+            return mQueueInfo.size();
+        }
+    }
+
+    /**
+     * 获取任务所在的队列，队列不存在时创建
+     */
+    private TaskList<TASK> getQueue(QueueInfo info) {
+        Map<String, TaskList<TASK>> level = mLevels.get(info.priority);
+        if (level == null) {
+            level = new LinkedHashMap<>();
+            mLevels.put(info.priority, level);
+        }
+        TaskList<TASK> list = level.get(info.host);
+        if (list == null) {
+            list = new TaskList<>();
+            level.put(info.host, list);
+        }
+        return list;
+    }
+
+    /**
+     * 从队列中移除任务，队列为空时移除该队列，主机在所有优先级中都没有任务时移除该主机的取出序号
+     *
+     * @return 任务的排队信息，任务不在缓存池中时返回null
+     */
+    private QueueInfo remove(String key) {
+        QueueInfo info = mQueueInfo.remove(key);
+        if (info == null) {
+            return null;
+        }
+        Map<String, TaskList<TASK>> level = mLevels.get(info.priority);
+        TaskList<TASK> list = level.get(info.host);
+        list.remove(key);
+        if (list.isEmpty()) {
+            level.remove(info.host);
+            if (level.isEmpty()) {
+                mLevels.remove(info.priority);
+            }
+            if (!isHostQueued(info.host)) {
+                mHostDispatch.remove(info.host);
+            }
+        }
+        return info;
+    }
+
+    /**
+     * 主机在任意优先级中是否还有排队的任务
+     */
+    private boolean isHostQueued(String host) {
+        for (Map<String, TaskList<TASK>> level : mLevels.values()) {
+            if (level.containsKey(host)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 任务的排队信息
+     */
+    private static final class QueueInfo {
+        final int priority;
+        final String host;
+        /**
+         * 进入缓存池的时间
+         */
+        long time;
+
+        QueueInfo(int priority, String host, long time) {
+            this.priority = priority;
+            this.host = host;
+            this.time = time;
+        }
     }
-}
\ No newline at end of file
+}
@@ -20,28 +20,38 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import com.arialyy.aria.core.AriaManager;
+import com.arialyy.aria.core.common.HostLimiter;
+import com.arialyy.aria.core.inf.AbsEntity;
 import com.arialyy.aria.core.inf.AbsTask;
 import com.arialyy.aria.util.CommonUtil;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Created by lyy on 2016/8/15.
  * 任务执行池，所有当前下载任务都该任务池中，默认下载大小为2
  */
 public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
-    final long TIME_OUT = 1000;
     private final String TAG = "BaseExecutePool";
-    ArrayBlockingQueue<TASK> mExecuteQueue;
+    TaskList<TASK> mExecuteQueue;
     Map<String, TASK> mExecuteMap;
     int mSize;
+    /**
+     * 每个主机正在执行的任务数
+     */
+    private Map<String, Integer> mHostTaskNum = new HashMap<>();
+    /**
+     * 任务所属的主机，key为任务的hashKey
+     */
+    private Map<String, String> mTaskHost = new HashMap<>();
 
     BaseExecutePool() {
         mSize = getMaxSize();
-        mExecuteQueue = new ArrayBlockingQueue<>(mSize);
+        mExecuteQueue = new TaskList<>();
         mExecuteMap = new ConcurrentHashMap<>();
     }
 
@@ -54,6 +64,15 @@ public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
         return 2;
     }
 
+    /**
+     * 获取同一个主机同时执行的最大任务数配置
+     *
+     * @return 0表示不限制
+     */
+    protected int getMaxTaskNumPerHost() {
+        return 0;
+    }
+
     /**
      * 获取所有正在执行的任务
      */
@@ -69,9 +88,12 @@ public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
                 return false;
             }
             String url = task.getKey();
-            if (mExecuteQueue.contains(task)) {
+            if (mExecuteQueue.contains(CommonUtil.keyToHashKey(url))) {
                 Log.e(TAG, "队列中已经包含了该任务，任务key【" + url + "】");
                 return false;
+            } else if (isHostFull(task)) {
+                Log.w(TAG, "主机执行的任务数已达上限，任务key【" + url + "】");
+                return false;
             } else {
                 if (mExecuteQueue.size() >= mSize) {
                     if (pollFirstTask()) {
@@ -92,17 +114,7 @@ public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
      */
     public void setMaxNum(int maxNum) {
         synchronized (AriaManager.LOCK) {
-            try {
-                ArrayBlockingQueue<TASK> temp = new ArrayBlockingQueue<>(maxNum);
-                TASK task;
-                while ((task = mExecuteQueue.poll(TIME_OUT, TimeUnit.MICROSECONDS)) != null) {
-                    temp.offer(task);
-                }
-                mExecuteQueue = temp;
-                mSize = maxNum;
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+            mSize = maxNum;
         }
     }
 
@@ -114,10 +126,15 @@ public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
     boolean putNewTask(TASK newTask) {
         synchronized (AriaManager.LOCK) {
             String url = newTask.getKey();
-            boolean s = mExecuteQueue.offer(newTask);
+            String key = CommonUtil.keyToHashKey(url);
+            boolean s = mExecuteQueue.size() < mSize && mExecuteQueue.addLast(key, newTask);
             Log.w(TAG, "任务添加" + (s ? "成功" : "失败，【" + url + "】"));
             if (s) {
-                mExecuteMap.put(CommonUtil.keyToHashKey(url), newTask);
+                mExecuteMap.put(key, newTask);
+                String host = getHost(newTask);
+                mTaskHost.put(key, host);
+                Integer num = mHostTaskNum.get(host);
+                mHostTaskNum.put(host, num == null ? 1 : num + 1);
             }
             return s;
         }
@@ -128,19 +145,15 @@ public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
      */
     boolean pollFirstTask() {
         synchronized (AriaManager.LOCK) {
-            try {
-                TASK oldTask = mExecuteQueue.poll(TIME_OUT, TimeUnit.MICROSECONDS);
-                if (oldTask == null) {
-                    Log.e(TAG, "移除任务失败");
-                    return false;
-                }
-                oldTask.stop();
-                String key = CommonUtil.keyToHashKey(oldTask.getKey());
-                mExecuteMap.remove(key);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+            TASK oldTask = mExecuteQueue.pollFirst();
+            if (oldTask == null) {
+                Log.e(TAG, "移除任务失败");
                 return false;
             }
+            oldTask.stop();
+            String key = CommonUtil.keyToHashKey(oldTask.getKey());
+            mExecuteMap.remove(key);
+            removeHost(key);
             return true;
         }
     }
@@ -148,18 +161,13 @@ public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
     @Override
     public TASK pollTask() {
         synchronized (AriaManager.LOCK) {
-            try {
-                TASK task;
-                task = mExecuteQueue.poll(TIME_OUT, TimeUnit.MICROSECONDS);
-                if (task != null) {
-                    String url = task.getKey();
-                    mExecuteMap.remove(CommonUtil.keyToHashKey(url));
-                }
-                return task;
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+            TASK task = mExecuteQueue.pollFirst();
+            if (task != null) {
+                String key = CommonUtil.keyToHashKey(task.getKey());
+                mExecuteMap.remove(key);
+                removeHost(key);
             }
-            return null;
+            return task;
         }
     }
 
@@ -194,12 +202,9 @@ public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
                 return false;
             }
             String convertKey = CommonUtil.keyToHashKey(key);
-            TASK task = mExecuteMap.get(convertKey);
-            final int oldQueueSize = mExecuteQueue.size();
-            boolean isSuccess = mExecuteQueue.remove(task);
-            final int newQueueSize = mExecuteQueue.size();
-            if (isSuccess && newQueueSize != oldQueueSize) {
+            if (mExecuteQueue.remove(convertKey) != null) {
                 mExecuteMap.remove(convertKey);
+                removeHost(convertKey);
                 return true;
             }
             return false;
@@ -208,6 +213,66 @@ public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
 
     @Override
     public int size() {
-        return mExecuteQueue.size();
+        synchronized (AriaManager.LOCK) {
+            return mExecuteQueue.size();
+        }
+    }
+
+    /**
+     * 任务所属主机正在执行的任务数是否已经达到上限
+     */
+    public boolean isHostFull(TASK task) {
+        synchronized (AriaManager.LOCK) {
+            int max = getMaxTaskNumPerHost();
+            if (max <= 0) {
+                return false;
+            }
+            Integer num = mHostTaskNum.get(getHost(task));
+            return num != null && num >= max;
+        }
+    }
+
+    /**
+     * 获取正在执行的任务数已经达到上限的主机
+     */
+    public Set<String> getFullHosts() {
+        synchronized (AriaManager.LOCK) {
+            Set<String> hosts = new HashSet<>();
+            int max = getMaxTaskNumPerHost();
+            if (max > 0) {
+                for (Map.Entry<String, Integer> entry : mHostTaskNum.entrySet()) {
+                    if (entry.getValue() >= max) {
+                        hosts.add(entry.getKey());
+                    }
+                }
+            }
+            return hosts;
+        }
+    }
+
+    /**
+     * 任务移出执行池后，减少所属主机的任务数
+     *
+     * @param key 任务的hashKey
+     */
+    void removeHost(String key) {
+        String host = mTaskHost.remove(key);
+        if (host == null) {
+            return;
+        }
+        Integer num = mHostTaskNum.get(host);
+        if (num == null || num <= 1) {
+            mHostTaskNum.remove(host);
+        } else {
+            mHostTaskNum.put(host, num - 1);
+        }
+    }
+
+    /**
+     * 获取任务所属的主机
+     */
+    static String getHost(AbsTask task) {
+        AbsEntity entity = task.getTaskEntity().getEntity();
+        return entity == null ? "" : HostLimiter.getHost(entity.getUrl());
     }
-}
\ No newline at end of file
+}
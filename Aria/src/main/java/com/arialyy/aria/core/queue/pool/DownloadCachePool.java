@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arialyy.aria.core.queue.pool;
+
+import com.arialyy.aria.core.common.TaskPriority;
+import com.arialyy.aria.core.download.DownloadTaskEntity;
+import com.arialyy.aria.core.inf.AbsTask;
+import com.arialyy.aria.core.inf.AbsTaskEntity;
+
+/**
+ * 下载任务的缓存池，按照{@link DownloadTaskEntity#priority}排序
+ */
+class DownloadCachePool<TASK extends AbsTask> extends BaseCachePool<TASK> {
+
+    @Override
+    protected int getPriority(TASK task) {
+        AbsTaskEntity entity = task.getTaskEntity();
+        return entity instanceof DownloadTaskEntity ? ((DownloadTaskEntity) entity).priority
+                : TaskPriority.NORMAL;
+    }
+}
@@ -21,9 +21,6 @@ import com.arialyy.aria.core.AriaManager;
 import com.arialyy.aria.core.inf.AbsTask;
 import com.arialyy.aria.util.CommonUtil;
 
-import java.util.Set;
-import java.util.concurrent.TimeUnit;
-
 /**
  * Created by AriaL on 2017/6/29.
  * 单个下载任务的执行池
@@ -36,6 +33,11 @@ class DownloadExecutePool<TASK extends AbsTask> extends BaseExecutePool<TASK> {
         return AriaManager.getInstance().getDownloadConfig().getMaxTaskNum();
     }
 
+    @Override
+    protected int getMaxTaskNumPerHost() {
+        return AriaManager.getInstance().getDownloadConfig().getMaxTaskNumPerHost();
+    }
+
     @Override
     public boolean putTask(TASK task) {
         synchronized (AriaManager.LOCK) {
@@ -44,45 +46,22 @@ class DownloadExecutePool<TASK extends AbsTask> extends BaseExecutePool<TASK> {
                 return false;
             }
             String url = task.getKey();
-            if (mExecuteQueue.contains(task)) {
+            if (mExecuteQueue.contains(CommonUtil.keyToHashKey(url))) {
                 if (!task.isRunning()) return true;
                 Log.e(TAG, "队列中已经包含了该任务，任务key【" + url + "】");
                 return false;
+            } else if (isHostFull(task)) {
+                Log.w(TAG, "主机执行的任务数已达上限，任务key【" + url + "】");
+                return false;
             } else {
+                //执行池已满时不再移除任何任务，由任务队列按优先级选择被抢占的任务
                 if (mExecuteQueue.size() >= mSize) {
-                    Set<String> keys = mExecuteMap.keySet();
-                    for (String key : keys) {
-                        if (mExecuteMap.get(key).isHighestPriorityTask()) return false;
-                    }
-                    if (pollFirstTask()) {
-                        return putNewTask(task);
-                    }
-                } else {
-                    return putNewTask(task);
+                    Log.w(TAG, "执行池已满，任务key【" + url + "】");
+                    return false;
                 }
+                return putNewTask(task);
             }
         }
         return false;
     }
-
-    @Override
-    boolean pollFirstTask() {
-        try {
-            TASK oldTask = mExecuteQueue.poll(TIME_OUT, TimeUnit.MICROSECONDS);
-            if (oldTask == null) {
-                Log.e(TAG, "移除任务失败");
-                return false;
-            }
-            if (oldTask.isHighestPriorityTask()) {
-                return false;
-            }
-            oldTask.stop();
-            String key = CommonUtil.keyToHashKey(oldTask.getKey());
-            mExecuteMap.remove(key);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            return false;
-        }
-        return true;
-    }
 }
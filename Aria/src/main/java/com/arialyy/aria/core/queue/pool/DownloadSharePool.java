@@ -29,7 +29,7 @@ public class DownloadSharePool {
 
     private DownloadSharePool() {
         executePool = new DownloadExecutePool<>();
-        cachePool = new BaseCachePool<>();
+        cachePool = new DownloadCachePool<>();
     }
 
     public static DownloadSharePool getInstance() {
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arialyy.aria.core.queue.pool;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按插入顺序排列的任务列表，使用双向链表保存顺序，使用HashMap索引链表节点，
+ * 查找、添加、删除、移动到队首都是O(1)操作。
+ * 该类不是线程安全的，调用者需要持有{@link com.arialyy.aria.core.AriaManager#LOCK}
+ */
+final class TaskList<TASK> {
+    private final Map<String, Node<TASK>> mIndex = new HashMap<>();
+    private Node<TASK> mHead, mTail;
+
+    /**
+     * @param key 任务的hashKey
+     */
+    boolean contains(String key) {
+        return mIndex.containsKey(key);
+    }
+
+    TASK get(String key) {
+        Node<TASK> node = mIndex.get(key);
+        return node == null ? null : node.task;
+    }
+
+    /**
+     * 将任务添加到队尾
+     *
+     * @return 列表中已经有该任务时返回false
+     */
+    boolean addLast(String key, TASK task) {
+        if (mIndex.containsKey(key)) {
+            return false;
+        }
+        Node<TASK> node = new Node<>(key, task);
+        mIndex.put(key, node);
+        linkLast(node);
+        return true;
+    }
+
+    /**
+     * 将任务添加到队首，列表中已经有该任务时，将该任务移动到队首
+     */
+    void addFirst(String key, TASK task) {
+        Node<TASK> node = mIndex.get(key);
+        if (node == null) {
+            node = new Node<>(key, task);
+            mIndex.put(key, node);
+        } else {
+            unlink(node);
+        }
+        linkFirst(node);
+    }
+
+    /**
+     * 移除任务
+     *
+     * @return 被移除的任务，列表中没有该任务时返回null
+     */
+    TASK remove(String key) {
+        Node<TASK> node = mIndex.remove(key);
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        return node.task;
+    }
+
+    /**
+     * 获取队首的任务，但不移除
+     */
+    TASK peekFirst() {
+        return mHead == null ? null : mHead.task;
+    }
+
+    /**
+     * 获取队首任务的key
+     */
+    String peekFirstKey() {
+        return mHead == null ? null : mHead.key;
+    }
+
+    /**
+     * 移除并返回队首的任务
+     */
+    TASK pollFirst() {
+        return mHead == null ? null : remove(mHead.key);
+    }
+
+    int size() {
+        return mIndex.size();
+    }
+
+    boolean isEmpty() {
+        return mIndex.isEmpty();
+    }
+
+    void clear() {
+        mIndex.clear();
+        mHead = mTail = null;
+    }
+
+    private void linkFirst(Node<TASK> node) {
+        node.prev = null;
+        node.next = mHead;
+        if (mHead == null) {
+            mTail = node;
+        } else {
+            mHead.prev = node;
+        }
+        mHead = node;
+    }
+
+    private void linkLast(Node<TASK> node) {
+        node.next = null;
+        node.prev = mTail;
+        if (mTail == null) {
+            mHead = node;
+        } else {
+            mTail.next = node;
+        }
+        mTail = node;
+    }
+
+    private void unlink(Node<TASK> node) {
+        if (node.prev == null) {
+            mHead = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            mTail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.prev = node.next = null;
+    }
+
+    private static final class Node<TASK> {
+        final String key;
+        final TASK task;
+        Node<TASK> prev, next;
+
+        Node(String key, TASK task) {
+            this.key = key;
+            this.task = task;
+        }
+    }
+}
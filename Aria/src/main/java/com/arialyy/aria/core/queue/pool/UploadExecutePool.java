@@ -26,4 +26,9 @@ public class UploadExecutePool<TASK extends AbsTask> extends BaseExecutePool<TAS
     protected int getMaxSize() {
         return AriaManager.getInstance().getUploadConfig().getMaxTaskNum();
     }
+
+    @Override
+    protected int getMaxTaskNumPerHost() {
+        return AriaManager.getInstance().getUploadConfig().getMaxTaskNumPerHost();
+    }
 }
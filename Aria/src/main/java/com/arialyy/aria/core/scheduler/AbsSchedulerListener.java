@@ -18,6 +18,8 @@ package com.arialyy.aria.core.scheduler;
 import com.arialyy.aria.core.inf.AbsEntity;
 import com.arialyy.aria.core.inf.ITask;
 
+import java.util.Set;
+
 /**
  * Created by Aria.Lao on 2017/6/7.
  */
@@ -76,6 +78,15 @@ public class AbsSchedulerListener<TASK extends ITask, SUB_ENTITY extends AbsEnti
 
     }
 
+    /**
+     * 观察者关心的任务key，由注解中的地址生成，调度器只会将这些任务的事件分发给该观察者
+     *
+     * @return 有注解没有填写地址时返回null，表示关心所有任务
+     */
+    public Set<String> getTaskKeys() {
+        return null;
+    }
+
     public void onSubTaskPre(TASK task, SUB_ENTITY subTask) {
 
     }
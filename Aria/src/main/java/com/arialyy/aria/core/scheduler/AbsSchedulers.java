@@ -15,7 +15,8 @@
  */
 package com.arialyy.aria.core.scheduler;
 
-import android.os.CountDownTimer;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
 import android.util.Log;
 
@@ -28,11 +29,6 @@ import com.arialyy.aria.core.inf.IEntity;
 import com.arialyy.aria.core.queue.ITaskQueue;
 import com.arialyy.aria.core.upload.UploadTask;
 
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-
 /**
  * Created by lyy on 2017/6/4.
  * 事件调度器，用于处理任务状态的调度
@@ -43,8 +39,11 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskEntity, TASK extends Abs
 
     protected QUEUE mQueue;
 
-    private Map<String, AbsSchedulerListener<TASK, AbsEntity>> mObservers =
-            new ConcurrentHashMap<>();
+    private ObserverIndex<TASK> mObservers = new ObserverIndex<>();
+
+    private ProgressBus<TASK> mProgressBus = new ProgressBus<>(mObservers);
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
 
     /**
      * 设置代理类后缀名
@@ -68,11 +67,18 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskEntity, TASK extends Abs
 
     @Override
     public void unRegister(Object obj) {
-        for (Iterator<Map.Entry<String, AbsSchedulerListener<TASK, AbsEntity>>> iter =
-             mObservers.entrySet().iterator(); iter.hasNext(); ) {
-            Map.Entry<String, AbsSchedulerListener<TASK, AbsEntity>> entry = iter.next();
-            if (entry.getKey().equals(obj.getClass().getName())) iter.remove();
-        }
+        mObservers.remove(obj.getClass().getName());
+        mProgressBus.removeObserver(obj.getClass().getName());
+    }
+
+    @Override
+    public void postProgress(TASK task) {
+        mProgressBus.post(task);
+    }
+
+    @Override
+    public void setProgressInterval(Object obj, long interval) {
+        mProgressBus.setInterval(obj.getClass().getName(), interval);
     }
 
     /**
@@ -112,6 +118,8 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskEntity, TASK extends Abs
      * 处理普通任务事件
      */
     private void handleNormalEvent(TASK task, int what) {
+        //状态改变前的进度已经过时，不再回调
+        mProgressBus.remove(task.getKey());
         switch (what) {
             case STOP:
                 if (task.getState() == IEntity.STATE_WAIT) {
@@ -137,16 +145,18 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskEntity, TASK extends Abs
     }
 
     /**
-     * 回调
+     * 回调，只回调关心该任务的观察者
      *
      * @param state 状态
      */
     private void callback(int state, TASK task) {
-        if (mObservers.size() > 0) {
-            Set<String> keys = mObservers.keySet();
-            for (String key : keys) {
-                callback(state, task, mObservers.get(key));
-            }
+        for (AbsSchedulerListener<TASK, AbsEntity> listener : mObservers.getGlobalObservers()
+                .values()) {
+            callback(state, task, listener);
+        }
+        for (AbsSchedulerListener<TASK, AbsEntity> listener : mObservers.getKeyObservers(task.getKey())
+                .values()) {
+            callback(state, task, listener);
         }
     }
 
@@ -214,14 +224,10 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskEntity, TASK extends Abs
         }
 
         final int reTryNum = num;
-        CountDownTimer timer = new CountDownTimer(interval, 1000) {
-            @Override
-            public void onTick(long millisUntilFinished) {
-
-            }
-
+        //重试和启动下一个任务会修改任务队列，和其它调度操作一样在主线程中执行
+        mHandler.postDelayed(new Runnable() {
             @Override
-            public void onFinish() {
+            public void run() {
                 AbsEntity entity = task.getTaskEntity().getEntity();
                 if (entity.getFailNum() < reTryNum) {
                     TASK task = mQueue.getTask(entity.getKey());
@@ -231,8 +237,7 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskEntity, TASK extends Abs
                     startNextTask();
                 }
             }
-        };
-        timer.start();
+        }, interval);
     }
 
     /**
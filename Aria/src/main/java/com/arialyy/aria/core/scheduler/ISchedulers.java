@@ -120,4 +120,19 @@ public interface ISchedulers<Task extends AbsTask> extends Handler.Callback {
      * @param obj 观察者类
      */
     void unRegister(Object obj);
+
+    /**
+     * 发送任务进度，进度不会立即回调，会合并后按观察者的刷新间隔统一回调
+     *
+     * @param task 执行中的任务
+     */
+    void postProgress(Task task);
+
+    /**
+     * 设置观察者接收任务进度的最小间隔
+     *
+     * @param obj      观察者类
+     * @param interval 刷新间隔，单位：毫秒
+     */
+    void setProgressInterval(Object obj, long interval);
 }
\ No newline at end of file
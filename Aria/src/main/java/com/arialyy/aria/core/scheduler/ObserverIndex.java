@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.scheduler;
+
+import com.arialyy.aria.core.inf.AbsEntity;
+import com.arialyy.aria.core.inf.AbsTask;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 观察者索引，按任务key索引关心该任务的观察者，分发事件时只需要遍历关心该任务的观察者。
+ * 注册和移除时重建索引，分发时读取不可变的索引，不需要加锁
+ */
+final class ObserverIndex<TASK extends AbsTask> {
+    /**
+     * 所有观察者，key为观察者的类名
+     */
+    private final Map<String, AbsSchedulerListener<TASK, AbsEntity>> mObservers = new LinkedHashMap<>();
+    /**
+     * 关心所有任务的观察者
+     */
+    private volatile Map<String, AbsSchedulerListener<TASK, AbsEntity>> mGlobal = Collections.emptyMap();
+    /**
+     * 只关心特定任务的观察者，key为任务的key
+     */
+    private volatile Map<String, Map<String, AbsSchedulerListener<TASK, AbsEntity>>> mKeyIndex =
+            Collections.emptyMap();
+
+    synchronized AbsSchedulerListener<TASK, AbsEntity> get(String observerKey) {
+        return mObservers.get(observerKey);
+    }
+
+    synchronized void put(String observerKey, AbsSchedulerListener<TASK, AbsEntity> listener) {
+        mObservers.put(observerKey, listener);
+        rebuild();
+    }
+
+    synchronized void remove(String observerKey) {
+        if (mObservers.remove(observerKey) != null) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 获取关心所有任务的观察者
+     */
+    Map<String, AbsSchedulerListener<TASK, AbsEntity>> getGlobalObservers() {
+        return mGlobal;
+    }
+
+    /**
+     * 获取只关心该任务的观察者，不包括{@link #getGlobalObservers()}
+     */
+    Map<String, AbsSchedulerListener<TASK, AbsEntity>> getKeyObservers(String taskKey) {
+        Map<String, AbsSchedulerListener<TASK, AbsEntity>> observers = mKeyIndex.get(taskKey);
+        return observers == null ? Collections.<String, AbsSchedulerListener<TASK, AbsEntity>>emptyMap()
+                : observers;
+    }
+
+    private void rebuild() {
+        Map<String, AbsSchedulerListener<TASK, AbsEntity>> global = new LinkedHashMap<>();
+        Map<String, Map<String, AbsSchedulerListener<TASK, AbsEntity>>> keyIndex = new HashMap<>();
+        for (Map.Entry<String, AbsSchedulerListener<TASK, AbsEntity>> entry : mObservers.entrySet()) {
+            Set<String> taskKeys = entry.getValue().getTaskKeys();
+            if (taskKeys == null) {
+                global.put(entry.getKey(), entry.getValue());
+                continue;
+            }
+            for (String taskKey : taskKeys) {
+                Map<String, AbsSchedulerListener<TASK, AbsEntity>> observers = keyIndex.get(taskKey);
+                if (observers == null) {
+                    observers = new LinkedHashMap<>();
+                    keyIndex.put(taskKey, observers);
+                }
+                observers.put(entry.getKey(), entry.getValue());
+            }
+        }
+        mGlobal = global;
+        mKeyIndex = keyIndex;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.scheduler;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.arialyy.aria.core.inf.AbsEntity;
+import com.arialyy.aria.core.inf.AbsTask;
+import com.arialyy.aria.core.inf.IEntity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 进度事件总线，合并所有任务的进度，每帧只向主线程发送一次消息，并按观察者的刷新间隔批量回调。
+ * 间隔内同一个任务的多次进度只回调最新的一次，回调耗时较长的观察者会跳过中间的进度，不会积压
+ */
+final class ProgressBus<TASK extends AbsTask> {
+    /**
+     * 观察者默认的刷新间隔，单位：毫秒
+     */
+    static final long DEFAULT_INTERVAL = 1000;
+    /**
+     * 合并进度的时间窗口，单位：毫秒
+     */
+    private static final long FRAME_INTERVAL = 100;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ObserverIndex<TASK> mObservers;
+    /**
+     * 等待分发的任务，key为任务的key
+     */
+    private final Map<String, TASK> mPending = new LinkedHashMap<>();
+    private final Map<String, Subscriber<TASK>> mSubscribers = new HashMap<>();
+    private boolean isScheduled = false;
+    private long mScheduledTime;
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param observers 调度器的观察者索引
+     */
+    ProgressBus(ObserverIndex<TASK> observers) {
+        mObservers = observers;
+    }
+
+    /**
+     * 发送任务进度，可以在任意线程调用
+     */
+    synchronized void post(TASK task) {
+        mPending.put(task.getKey(), task);
+        schedule(SystemClock.uptimeMillis() + FRAME_INTERVAL);
+    }
+
+    /**
+     * 移除任务等待分发的进度，任务进入停止、完成等状态时调用，避免状态回调之后再回调进度
+     */
+    synchronized void remove(String taskKey) {
+        mPending.remove(taskKey);
+        for (Subscriber<TASK> subscriber : mSubscribers.values()) {
+            subscriber.dirty.remove(taskKey);
+        }
+    }
+
+    /**
+     * 设置观察者的刷新间隔
+     *
+     * @param observerKey 观察者的类名
+     * @param interval    刷新间隔，单位：毫秒
+     */
+    synchronized void setInterval(String observerKey, long interval) {
+        getSubscriber(observerKey).interval = Math.max(interval, 0);
+    }
+
+    /**
+     * 移除观察者
+     */
+    synchronized void removeObserver(String observerKey) {
+        mSubscribers.remove(observerKey);
+    }
+
+    private void schedule(long time) {
+        if (!isScheduled || time < mScheduledTime) {
+            mHandler.removeCallbacks(mFlushTask);
+            mHandler.postAtTime(mFlushTask, time);
+            isScheduled = true;
+            mScheduledTime = time;
+        }
+    }
+
+    private Subscriber<TASK> getSubscriber(String observerKey) {
+        Subscriber<TASK> subscriber = mSubscribers.get(observerKey);
+        if (subscriber == null) {
+            subscriber = new Subscriber<>();
+            mSubscribers.put(observerKey, subscriber);
+        }
+        return subscriber;
+    }
+
+    /**
+     * 将任务的进度加入关心该任务的观察者的待回调列表
+     */
+    private void dispatch(TASK task, Map<String, AbsSchedulerListener<TASK, AbsEntity>> observers) {
+        for (Map.Entry<String, AbsSchedulerListener<TASK, AbsEntity>> entry : observers.entrySet()) {
+            Subscriber<TASK> subscriber = getSubscriber(entry.getKey());
+            subscriber.listener = entry.getValue();
+            subscriber.dirty.put(task.getKey(), task);
+        }
+    }
+
+    /**
+     * 在主线程中分发进度，没有到达刷新间隔的观察者保留最新的进度，等到达间隔后再回调
+     */
+    private void flush() {
+        List<Map.Entry<String, Subscriber<TASK>>> subscribers;
+        synchronized (this) {
+            for (TASK task : mPending.values()) {
+                if (task.getState() != IEntity.STATE_RUNNING) {
+                    continue;
+                }
+                dispatch(task, mObservers.getGlobalObservers());
+                dispatch(task, mObservers.getKeyObservers(task.getKey()));
+            }
+            mPending.clear();
+            isScheduled = false;
+            subscribers = new ArrayList<>(mSubscribers.entrySet());
+        }
+        long nextTime = -1;
+        for (Map.Entry<String, Subscriber<TASK>> entry : subscribers) {
+            Subscriber<TASK> subscriber = entry.getValue();
+            List<TASK> tasks;
+            synchronized (this) {
+                if (subscriber.dirty.isEmpty() || subscriber.listener == null) {
+                    continue;
+                }
+                long dueTime = subscriber.lastTime + subscriber.interval;
+                if (SystemClock.uptimeMillis() < dueTime) {
+                    nextTime = nextTime == -1 ? dueTime : Math.min(nextTime, dueTime);
+                    continue;
+                }
+                tasks = new ArrayList<>(subscriber.dirty.values());
+                subscriber.dirty.clear();
+            }
+            for (TASK task : tasks) {
+                //进度在分发前可能已经被状态回调取代，任务不再执行时丢弃该进度
+                if (task.getState() != IEntity.STATE_RUNNING) {
+                    continue;
+                }
+                subscriber.listener.onTaskRunning(task);
+            }
+            synchronized (this) {
+                //从回调结束时开始计算间隔，回调耗时较长的观察者会收到更少的进度
+                subscriber.lastTime = SystemClock.uptimeMillis();
+            }
+        }
+        if (nextTime != -1) {
+            synchronized (this) {
+                schedule(nextTime);
+            }
+        }
+    }
+
+    /**
+     * 观察者的分发状态，只保存每个任务最新的进度
+     */
+    private static class Subscriber<TASK extends AbsTask> {
+        AbsSchedulerListener<TASK, AbsEntity> listener;
+        long interval = DEFAULT_INTERVAL;
+        long lastTime = 0;
+        final Map<String, TASK> dirty = new LinkedHashMap<>();
+    }
+}
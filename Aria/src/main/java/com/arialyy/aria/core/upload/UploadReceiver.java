@@ -70,6 +70,12 @@ public class UploadReceiver extends AbsReceiver<UploadEntity> {
         return DbEntity.findAllData(UploadEntity.class);
     }
 
+    @Override
+    public List<UploadEntity> getSimpleTaskList(int page, int num) {
+        CheckUtil.checkPageParams(page, num);
+        return DbEntity.query(UploadEntity.class).limit(num).offset((page - 1) * num).list();
+    }
+
     @Override
     public void stopAllTask() {
         AriaManager.getInstance()
@@ -115,6 +121,16 @@ public class UploadReceiver extends AbsReceiver<UploadEntity> {
         return this;
     }
 
+    /**
+     * 设置当前类接收任务进度的最小间隔，默认1000毫秒，间隔内同一个任务只回调最新的进度
+     *
+     * @param interval 刷新间隔，单位：毫秒
+     */
+    public UploadReceiver setProgressInterval(long interval) {
+        UploadSchedulers.getInstance().setProgressInterval(obj, interval);
+        return this;
+    }
+
     @Override
     public void unRegister() {
         String className = obj.getClass().getName();
@@ -18,6 +18,7 @@ package com.arialyy.aria.core.upload.uploader;
 import android.util.Log;
 
 import com.arialyy.aria.core.common.AbsThreadTask;
+import com.arialyy.aria.core.common.HttpConnectionPool;
 import com.arialyy.aria.core.common.StateConstance;
 import com.arialyy.aria.core.common.SubThreadConfig;
 import com.arialyy.aria.core.inf.IUploadListener;
@@ -67,7 +68,7 @@ class HttpThreadTask extends AbsThreadTask<UploadEntity, UploadTaskEntity> {
         URL url;
         try {
             url = new URL(mEntity.getUrl());
-            mHttpConn = (HttpURLConnection) url.openConnection();
+            mHttpConn = HttpConnectionPool.getInstance().openConnection(url);
             mHttpConn.setUseCaches(false);
             mHttpConn.setDoOutput(true);
             mHttpConn.setDoInput(true);
@@ -154,6 +155,7 @@ class HttpThreadTask extends AbsThreadTask<UploadEntity, UploadTaskEntity> {
         byte[] buffer = new byte[4096];
         int bytesRead;
         while ((bytesRead = inputStream.read(buffer)) != -1) {
+            limitSpeed(bytesRead);
             STATE.CURRENT_LOCATION += bytesRead;
             mOutputStream.write(buffer, 0, bytesRead);
             if (STATE.isCancel) {
@@ -193,8 +195,8 @@ class HttpThreadTask extends AbsThreadTask<UploadEntity, UploadTaskEntity> {
             while ((line = reader.readLine()) != null) {
                 response.append(line);
             }
+            //响应已经读取完毕，关闭输入流后连接回到连接池
             reader.close();
-            mHttpConn.disconnect();
         } else {
             Log.w(TAG, "state_code = " + status);
             fail();
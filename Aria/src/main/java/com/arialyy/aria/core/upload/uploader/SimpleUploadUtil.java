@@ -15,6 +15,7 @@
  */
 package com.arialyy.aria.core.upload.uploader;
 
+import com.arialyy.aria.core.common.ExecutorManager;
 import com.arialyy.aria.core.common.IUtil;
 import com.arialyy.aria.core.inf.IUploadListener;
 import com.arialyy.aria.core.upload.UploadEntity;
@@ -90,7 +91,7 @@ public class SimpleUploadUtil implements IUtil, Runnable {
 
     @Override
     public void start() {
-        new Thread(this).start();
+        ExecutorManager.getInstance().executeFlow(this);
     }
 
     @Override
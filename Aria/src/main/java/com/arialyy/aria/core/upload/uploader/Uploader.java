@@ -76,4 +76,9 @@ class Uploader extends AbsFileer<UploadEntity, UploadTaskEntity> {
     protected AbsThreadTask selectThreadTask(SubThreadConfig<UploadTaskEntity> config) {
         return new HttpThreadTask(mConstance, (IUploadListener) mListener, config);
     }
+
+    @Override
+    protected String getTaskType() {
+        return "HTTP_UPLOAD";
+    }
 }
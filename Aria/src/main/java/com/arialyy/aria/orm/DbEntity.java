@@ -62,6 +62,16 @@ public class DbEntity {
         return util.findAllData(clazz);
     }
 
+    /**
+     * 创建查询，支持排序、指定字段、分页和流式读取
+     * <code>
+     * DbEntity.query(DownloadEntity.class).where("isGroupChild=?", "false").limit(20).list();
+     * </code>
+     */
+    public static <T extends DbEntity> DbQuery<T> query(Class<T> clazz) {
+        return new DbQuery<>(clazz);
+    }
+
     /**
      * 查询第一条数据
      */
@@ -126,6 +136,7 @@ public class DbEntity {
      * 删除当前数据
      */
     public void deleteData() {
+        DbWriteQueue.getInstance().remove(this);
         deleteData(getClass(), "rowid=?", rowID + "");
     }
 
@@ -136,6 +147,25 @@ public class DbEntity {
         DbUtil.getInstance().modifyData(this);
     }
 
+    /**
+     * 延迟修改数据，同一行数据在写入间隔内的多次修改会合并为一次，并和其它数据在同一个事务中写入，
+     * 适用于频繁修改的数据
+     */
+    public void updateLater() {
+        if (rowID == -1) {
+            update();
+            return;
+        }
+        DbWriteQueue.getInstance().enqueue(this);
+    }
+
+    /**
+     * 将所有延迟修改的数据立即写入数据库
+     */
+    public static void flushPending() {
+        DbWriteQueue.getInstance().flush();
+    }
+
     /**
      * 保存自身，如果表中已经有数据，则更新数据，否则插入数据
      */
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arialyy.aria.orm;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 流式读取查询结果，每次调用{@link #next()}时才从游标中创建实体，遍历大表时不需要一次创建所有实体。
+ * 迭代器持有数据库的读会话，直到游标关闭，期间修改表结构的操作会等待遍历结束。
+ * 遍历结束时会自动关闭游标，提前结束遍历时需要调用{@link #close()}；
+ * 迭代器只能在创建它的线程中使用和关闭，并且该线程在遍历期间不能执行会修改表结构的操作
+ */
+public final class DbIterator<T extends DbEntity> implements Iterator<T>, Closeable {
+    private final SQLiteDatabase mDb;
+    private final DbSession mSession;
+    private final Class<T> mClazz;
+    private final Cursor mCursor;
+    private final Thread mOwner;
+    private boolean isClosed = false;
+    /**
+     * 游标是否已经移动到下一行，null表示还没有移动
+     */
+    private Boolean hasNext;
+
+    DbIterator(SQLiteDatabase db, DbSession session, Class<T> clazz, Cursor cursor) {
+        mDb = db;
+        mSession = session;
+        mClazz = clazz;
+        mCursor = cursor;
+        mOwner = Thread.currentThread();
+    }
+
+    @Override
+    public boolean hasNext() {
+        checkThread();
+        if (hasNext == null) {
+            hasNext = !isClosed && mCursor.moveToNext();
+            if (!hasNext) {
+                close();
+            }
+        }
+        return hasNext;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        hasNext = null;
+        return SqlHelper.readEntity(mDb, mClazz, mCursor);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("不支持删除");
+    }
+
+    @Override
+    public void close() {
+        checkThread();
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        try {
+            if (!mCursor.isClosed()) {
+                mCursor.close();
+            }
+        } finally {
+            mSession.endRead();
+        }
+    }
+
+    /**
+     * 读会话的锁属于创建迭代器的线程，不能在其它线程中使用
+     */
+    private void checkThread() {
+        if (Thread.currentThread() != mOwner) {
+            throw new IllegalStateException("DbIterator只能在创建它的线程中使用");
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arialyy.aria.orm;
+
+import com.arialyy.aria.util.CheckUtil;
+import com.arialyy.aria.util.CommonUtil;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 数据库查询，支持条件、排序、指定字段、分页和流式读取，适用于数据量较大的表
+ * <code>
+ * List<DownloadEntity> page = DbEntity.query(DownloadEntity.class)
+ * .where("isGroupChild=?", "false")
+ * .orderByDesc("completeTime")
+ * .limit(20)
+ * .after(lastEntity)
+ * .list();
+ * </code>
+ */
+public final class DbQuery<T extends DbEntity> {
+    private static final String ROW_ID = "rowid";
+    private final Class<T> mClazz;
+    private String[] mWhere;
+    private String mOrderColumn;
+    private boolean isDesc = false;
+    private String[] mColumns;
+    private int mLimit = -1;
+    private int mOffset = 0;
+    private T mAfter;
+
+    DbQuery(Class<T> clazz) {
+        mClazz = clazz;
+    }
+
+    /**
+     * 查询条件，格式和{@link DbEntity#findDatas(Class, String...)}一致
+     * <code>
+     * where("downloadUrl=?", downloadUrl)
+     * </code>
+     */
+    public DbQuery<T> where(String... expression) {
+        CheckUtil.checkSqlExpression(expression);
+        mWhere = expression;
+        return this;
+    }
+
+    /**
+     * 按字段升序排列，排序值相同时按rowid排列
+     */
+    public DbQuery<T> orderBy(String column) {
+        mOrderColumn = column;
+        isDesc = false;
+        return this;
+    }
+
+    /**
+     * 按字段降序排列，排序值相同时按rowid排列
+     */
+    public DbQuery<T> orderByDesc(String column) {
+        mOrderColumn = column;
+        isDesc = true;
+        return this;
+    }
+
+    /**
+     * 只查询指定的字段，其它字段保持实体的默认值，主键字段总会被查询
+     */
+    public DbQuery<T> columns(String... columns) {
+        mColumns = columns;
+        return this;
+    }
+
+    /**
+     * 最多返回的行数
+     */
+    public DbQuery<T> limit(int limit) {
+        mLimit = limit;
+        return this;
+    }
+
+    /**
+     * 跳过的行数，数据量大时推荐使用{@link #after(DbEntity)}
+     */
+    public DbQuery<T> offset(int offset) {
+        mOffset = offset;
+        return this;
+    }
+
+    /**
+     * 游标分页，从上一页的最后一条数据之后开始查询，不需要扫描跳过的行，
+     * 排序字段为null的数据按SQLite的规则排列：升序时在最前，降序时在最后
+     *
+     * @param last 上一页的最后一条数据，为null时从第一条开始
+     */
+    public DbQuery<T> after(T last) {
+        mAfter = last;
+        return this;
+    }
+
+    /**
+     * 查询数据
+     *
+     * @return 没有数据返回null
+     */
+    public List<T> list() {
+        return DbUtil.getInstance().findData(this);
+    }
+
+    /**
+     * 查询第一条数据
+     */
+    public T first() {
+        int limit = mLimit;
+        mLimit = 1;
+        List<T> list = list();
+        mLimit = limit;
+        return list == null || list.isEmpty() ? null : list.get(0);
+    }
+
+    /**
+     * 流式读取数据，每次只创建一个实体，读取完成后需要在当前线程中调用{@link DbIterator#close()}，
+     * 否则修改表结构的操作会一直等待
+     */
+    public DbIterator<T> iterator() {
+        return DbUtil.getInstance().iterator(this);
+    }
+
+    Class<T> getEntityClass() {
+        return mClazz;
+    }
+
+    /**
+     * 生成查询语句
+     */
+    String getSql() {
+        StringBuilder sb = new StringBuilder("SELECT ");
+        if (mColumns == null || mColumns.length == 0) {
+            sb.append(ROW_ID).append(", *");
+        } else {
+            List<String> columns = new ArrayList<>();
+            columns.add(ROW_ID);
+            String primary = SqlUtil.getPrimaryName(mClazz);
+            if (!isEmpty(primary)) {
+                columns.add(primary);
+            }
+            for (String column : mColumns) {
+                if (!columns.contains(column)) {
+                    columns.add(column);
+                }
+            }
+            sb.append(join(", ", columns));
+        }
+        sb.append(" FROM ").append(CommonUtil.getClassName(mClazz));
+        List<String> conditions = new ArrayList<>();
+        if (mWhere != null) {
+            conditions.add("(" + mWhere[0] + ")");
+        }
+        if (mAfter != null) {
+            String op = isDesc ? " < ?" : " > ?";
+            if (isEmpty(mOrderColumn)) {
+                conditions.add(ROW_ID + op);
+            } else if (getOrderValue() == null) {
+                //SQLite中NULL升序时排在最前，降序时排在最后
+                String nullRows = mOrderColumn + " IS NULL AND " + ROW_ID + op;
+                conditions.add(isDesc ? "(" + nullRows + ")"
+                        : "((" + nullRows + ") OR " + mOrderColumn + " IS NOT NULL)");
+            } else {
+                String rows = mOrderColumn + op + " OR (" + mOrderColumn + " = ? AND " + ROW_ID + op + ")";
+                conditions.add(isDesc ? "(" + rows + " OR " + mOrderColumn + " IS NULL)" : "(" + rows + ")");
+            }
+        }
+        if (!conditions.isEmpty()) {
+            sb.append(" WHERE ").append(join(" AND ", conditions));
+        }
+        String direction = isDesc ? " DESC" : " ASC";
+        sb.append(" ORDER BY ");
+        if (!isEmpty(mOrderColumn)) {
+            sb.append(mOrderColumn).append(direction).append(", ");
+        }
+        sb.append(ROW_ID).append(direction);
+        if (mLimit >= 0 || mOffset > 0) {
+            sb.append(" LIMIT ").append(mLimit).append(" OFFSET ").append(mOffset);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 获取查询语句的参数
+     */
+    String[] getArgs() {
+        List<String> args = new ArrayList<>();
+        if (mWhere != null) {
+            args.addAll(Arrays.asList(mWhere).subList(1, mWhere.length));
+        }
+        if (mAfter != null) {
+            if (!isEmpty(mOrderColumn)) {
+                Object value = getOrderValue();
+                if (value != null) {
+                    args.add(String.valueOf(value));
+                    args.add(String.valueOf(value));
+                }
+            }
+            args.add(String.valueOf(mAfter.rowID));
+        }
+        return args.toArray(new String[args.size()]);
+    }
+
+    /**
+     * 获取上一页最后一条数据的排序值
+     *
+     * @return 排序值为null时返回null，不能作为"null"字符串绑定
+     */
+    private Object getOrderValue() {
+        Field field = CommonUtil.getField(mClazz, mOrderColumn);
+        if (field == null) {
+            throw new IllegalArgumentException("排序字段【" + mOrderColumn + "】不存在");
+        }
+        try {
+            return field.get(mAfter);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static boolean isEmpty(String str) {
+        return str == null || str.length() == 0;
+    }
+
+    private static String join(String delimiter, List<String> list) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0, size = list.size(); i < size; i++) {
+            if (i > 0) {
+                sb.append(delimiter);
+            }
+            sb.append(list.get(i));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arialyy.aria.orm;
+
+import android.annotation.TargetApi;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 数据库会话，管理数据库连接和读写锁。
+ * 数据库使用WAL模式，读操作之间可以并发，并且不会被写操作阻塞；写操作串行执行；
+ * 修改表结构时独占数据库，读写操作都需要等待。
+ * 同一个线程不能在持有读锁或写锁时获取表结构锁
+ */
+final class DbSession {
+    private final SqlHelper mHelper;
+    private final ReentrantReadWriteLock mSchemaLock = new ReentrantReadWriteLock();
+    private final ReentrantLock mWriteLock = new ReentrantLock();
+    private volatile SQLiteDatabase mDb;
+    private boolean isWal = false;
+
+    DbSession(SqlHelper helper) {
+        mHelper = helper;
+    }
+
+    /**
+     * 开始读操作，需要在finally中调用{@link #endRead()}
+     */
+    SQLiteDatabase beginRead() {
+        mSchemaLock.readLock().lock();
+        return getDb();
+    }
+
+    void endRead() {
+        mSchemaLock.readLock().unlock();
+    }
+
+    /**
+     * 开始写操作，需要在finally中调用{@link #endWrite()}
+     */
+    SQLiteDatabase beginWrite() {
+        mSchemaLock.readLock().lock();
+        mWriteLock.lock();
+        return getDb();
+    }
+
+    void endWrite() {
+        mWriteLock.unlock();
+        mSchemaLock.readLock().unlock();
+    }
+
+    /**
+     * 开始修改表结构，需要在finally中调用{@link #endSchema()}
+     */
+    SQLiteDatabase beginSchema() {
+        mSchemaLock.writeLock().lock();
+        return getDb();
+    }
+
+    void endSchema() {
+        mSchemaLock.writeLock().unlock();
+    }
+
+    /**
+     * 在写操作中开启事务，WAL模式下使用非独占事务，事务执行期间读操作不会被阻塞
+     */
+    void beginTransaction(SQLiteDatabase db) {
+        if (isWal) {
+            beginTransactionNonExclusive(db);
+        } else {
+            db.beginTransaction();
+        }
+    }
+
+    private synchronized SQLiteDatabase getDb() {
+        if (mDb == null || !mDb.isOpen()) {
+            mDb = mHelper.getWritableDatabase();
+            isWal = enableWal(mDb);
+        }
+        return mDb;
+    }
+
+    private boolean enableWal(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return false;
+        }
+        return enableWriteAheadLogging(db);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private boolean enableWriteAheadLogging(SQLiteDatabase db) {
+        return db.enableWriteAheadLogging();
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void beginTransactionNonExclusive(SQLiteDatabase db) {
+        db.beginTransactionNonExclusive();
+    }
+}
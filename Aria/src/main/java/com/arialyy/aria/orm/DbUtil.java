@@ -31,21 +31,20 @@ import java.util.List;
 
 /**
  * Created by lyy on 2015/2/11.
- * 数据库操作工具
+ * 数据库操作工具，读写操作通过{@link DbSession}加锁，读操作之间可以并发执行
  */
 public class DbUtil {
     private static final String TAG = "DbUtil";
     private volatile static DbUtil INSTANCE = null;
     private int ROW_ID = 7;
-    private SQLiteDatabase mDb;
-    private SqlHelper mHelper;
+    private DbSession mSession;
 
     private DbUtil() {
 
     }
 
     private DbUtil(Context context) {
-        mHelper = SqlHelper.init(context.getApplicationContext());
+        mSession = new DbSession(SqlHelper.init(context.getApplicationContext()));
     }
 
     public static DbUtil init(Context context) {
@@ -69,142 +68,225 @@ public class DbUtil {
     /**
      * 清空表数据
      */
-    synchronized <T extends DbEntity> void clean(Class<T> clazz) {
-        checkDb();
-        String tableName = CommonUtil.getClassName(clazz);
-        if (tableExists(clazz)) {
-            String sql = "DELETE FROM " + tableName;
-            exeSql(sql);
+    <T extends DbEntity> void clean(Class<T> clazz) {
+        if (!tableExists(clazz)) {
+            return;
+        }
+        SQLiteDatabase db = mSession.beginWrite();
+        try {
+            db.execSQL("DELETE FROM " + CommonUtil.getClassName(clazz));
+        } finally {
+            mSession.endWrite();
         }
     }
 
     /**
-     * 执行sql语句
+     * 执行sql语句，sql语句可能修改表结构，执行时独占数据库
      */
     void exeSql(String sql) {
-        mDb.execSQL(sql);
+        SQLiteDatabase db = mSession.beginSchema();
+        try {
+            //缓存的语句需要重新编译
+            SqlHelper.clearStatementCache();
+            db.execSQL(sql);
+        } finally {
+            mSession.endSchema();
+        }
     }
 
     /**
      * 删除某条数据
      */
-    synchronized <T extends DbEntity> void delData(Class<T> clazz, String... expression) {
+    <T extends DbEntity> void delData(Class<T> clazz, String... expression) {
         CheckUtil.checkSqlExpression(expression);
-        checkDb();
-        SqlHelper.delData(mDb, clazz, expression);
+        SQLiteDatabase db = mSession.beginWrite();
+        try {
+            SqlHelper.delData(db, clazz, expression);
+        } finally {
+            mSession.endWrite();
+        }
     }
 
     /**
      * 修改某行数据
      */
-    synchronized void modifyData(DbEntity dbEntity) {
-        checkDb();
-        SqlHelper.modifyData(mDb, dbEntity);
+    void modifyData(DbEntity dbEntity) {
+        SQLiteDatabase db = mSession.beginWrite();
+        try {
+            SqlHelper.modifyData(db, dbEntity);
+        } finally {
+            mSession.endWrite();
+        }
+    }
+
+    /**
+     * 在一个事务中修改多行数据
+     */
+    void modifyData(List<DbEntity> dbEntities) {
+        SQLiteDatabase db = mSession.beginWrite();
+        try {
+            mSession.beginTransaction(db);
+            try {
+                for (DbEntity entity : dbEntities) {
+                    SqlHelper.modifyData(db, entity);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            mSession.endWrite();
+        }
     }
 
     /**
      * 遍历所有数据
      */
-    synchronized <T extends DbEntity> List<T> findAllData(Class<T> clazz) {
-        checkDb();
-        return SqlHelper.findAllData(mDb, clazz);
+    <T extends DbEntity> List<T> findAllData(Class<T> clazz) {
+        DbWriteQueue.getInstance().flush(clazz);
+        SQLiteDatabase db = mSession.beginRead();
+        try {
+            return SqlHelper.findAllData(db, clazz);
+        } finally {
+            mSession.endRead();
+        }
     }
 
     /**
      * 条件查寻数据
      */
-    synchronized <T extends DbEntity> List<T> findData(Class<T> clazz, String... expression) {
-        checkDb();
-        return SqlHelper.findData(mDb, clazz, expression);
+    <T extends DbEntity> List<T> findData(Class<T> clazz, String... expression) {
+        DbWriteQueue.getInstance().flush(clazz);
+        SQLiteDatabase db = mSession.beginRead();
+        try {
+            return SqlHelper.findData(db, clazz, expression);
+        } finally {
+            mSession.endRead();
+        }
+    }
+
+    /**
+     * 按照{@link DbQuery}查询数据
+     */
+    <T extends DbEntity> List<T> findData(DbQuery<T> query) {
+        DbWriteQueue.getInstance().flush(query.getEntityClass());
+        SQLiteDatabase db = mSession.beginRead();
+        try {
+            return SqlHelper.findData(db, query);
+        } finally {
+            mSession.endRead();
+        }
+    }
+
+    /**
+     * 按照{@link DbQuery}流式读取数据，读操作在迭代器关闭时才结束
+     */
+    <T extends DbEntity> DbIterator<T> iterator(DbQuery<T> query) {
+        DbWriteQueue.getInstance().flush(query.getEntityClass());
+        SQLiteDatabase db = mSession.beginRead();
+        try {
+            return SqlHelper.iterator(db, mSession, query);
+        } catch (RuntimeException e) {
+            mSession.endRead();
+            throw e;
+        }
     }
 
     /**
      * 通过rowId判断数据是否存在
      */
-    synchronized <T extends DbEntity> boolean isExist(Class<T> clazz, int rowId) {
-        checkDb();
-        String sql = "SELECT rowid FROM " + CommonUtil.getClassName(clazz) + " WHERE rowid=" + rowId;
-        Cursor cursor = mDb.rawQuery(sql, null);
-        boolean isExist = cursor.getCount() > 0;
-        cursor.close();
-        return isExist;
+    <T extends DbEntity> boolean isExist(Class<T> clazz, int rowId) {
+        SQLiteDatabase db = mSession.beginRead();
+        try {
+            String sql = "SELECT rowid FROM " + CommonUtil.getClassName(clazz) + " WHERE rowid=?";
+            Cursor cursor = db.rawQuery(sql, new String[]{String.valueOf(rowId)});
+            boolean isExist = cursor.getCount() > 0;
+            cursor.close();
+            return isExist;
+        } finally {
+            mSession.endRead();
+        }
     }
 
     /**
      * 条件查寻数据
      */
     @Deprecated
-    synchronized <T extends DbEntity> List<T> findData(Class<T> clazz,
-                                                       @NonNull String[] wheres, @NonNull String[] values) {
-        checkDb();
-        return SqlHelper.findData(mDb, clazz, wheres, values);
+    <T extends DbEntity> List<T> findData(Class<T> clazz, @NonNull String[] wheres,
+                                          @NonNull String[] values) {
+        DbWriteQueue.getInstance().flush(clazz);
+        SQLiteDatabase db = mSession.beginRead();
+        try {
+            return SqlHelper.findData(db, clazz, wheres, values);
+        } finally {
+            mSession.endRead();
+        }
     }
 
     /**
      * 插入数据
      */
-    synchronized void insertData(DbEntity dbEntity) {
-        checkDb();
-        SqlHelper.insertData(mDb, dbEntity);
+    void insertData(DbEntity dbEntity) {
+        SQLiteDatabase db = mSession.beginWrite();
+        try {
+            SqlHelper.insertData(db, dbEntity);
+        } finally {
+            mSession.endWrite();
+        }
     }
 
     /**
      * 查找某张表是否存在
      */
-    synchronized boolean tableExists(Class clazz) {
-        checkDb();
-        return SqlHelper.tableExists(mDb, clazz);
-    }
-
-    synchronized void createTable(Class clazz, String tableName) {
-        checkDb();
-        SqlHelper.createTable(mDb, clazz, tableName);
+    boolean tableExists(Class clazz) {
+        SQLiteDatabase db = mSession.beginRead();
+        try {
+            return SqlHelper.tableExists(db, clazz);
+        } finally {
+            mSession.endRead();
+        }
     }
 
-    private void checkDb() {
-        if (mDb == null || !mDb.isOpen()) {
-            mDb = mHelper.getReadableDatabase();
+    void createTable(Class clazz, String tableName) {
+        SQLiteDatabase db = mSession.beginSchema();
+        try {
+            SqlHelper.createTable(db, clazz, tableName);
+        } finally {
+            mSession.endSchema();
         }
     }
 
     /**
      * 创建表
      */
-    private synchronized void createTable(Class clazz) {
+    private void createTable(Class clazz) {
         createTable(clazz, null);
     }
 
-    /**
-     * 关闭数据库
-     */
-    private synchronized void close() {
-        if (mDb != null) {
-            mDb.close();
-        }
-    }
-
     /**
      * 获取所在行Id
      */
-    synchronized int[] getRowId(Class clazz) {
-        checkDb();
-        Cursor cursor = mDb.rawQuery("SELECT rowid, * FROM " + CommonUtil.getClassName(clazz), null);
-        int[] ids = new int[cursor.getCount()];
-        int i = 0;
-        while (cursor.moveToNext()) {
-            ids[i] = cursor.getInt(cursor.getColumnIndex("rowid"));
-            i++;
+    int[] getRowId(Class clazz) {
+        SQLiteDatabase db = mSession.beginRead();
+        try {
+            Cursor cursor = db.rawQuery("SELECT rowid FROM " + CommonUtil.getClassName(clazz), null);
+            int[] ids = new int[cursor.getCount()];
+            int i = 0;
+            while (cursor.moveToNext()) {
+                ids[i] = cursor.getInt(cursor.getColumnIndex("rowid"));
+                i++;
+            }
+            cursor.close();
+            return ids;
+        } finally {
+            mSession.endRead();
         }
-        cursor.close();
-        close();
-        return ids;
     }
 
     /**
      * 获取行Id
      */
-    synchronized int getRowId(Class clazz, Object[] wheres, Object[] values) {
-        checkDb();
+    int getRowId(Class clazz, Object[] wheres, Object[] values) {
         if (wheres.length <= 0 || values.length <= 0) {
             Log.e(TAG, "请输入删除条件");
             return -1;
@@ -221,10 +303,14 @@ public class DbUtil {
             i++;
         }
         SqlHelper.print(ROW_ID, sb.toString());
-        Cursor c = mDb.rawQuery(sb.toString(), null);
-        int id = c.getColumnIndex("rowid");
-        c.close();
-        close();
-        return id;
+        SQLiteDatabase db = mSession.beginRead();
+        try {
+            Cursor c = db.rawQuery(sb.toString(), null);
+            int id = c.getColumnIndex("rowid");
+            c.close();
+            return id;
+        } finally {
+            mSession.endRead();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arialyy.aria.orm;
+
+import com.arialyy.aria.core.common.ExecutorManager;
+import com.arialyy.aria.util.CommonUtil;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 延迟写入队列，同一行数据的多次修改会合并为一次，到达写入间隔后在一个事务中统一写入数据库
+ */
+final class DbWriteQueue {
+    /**
+     * 写入间隔，单位：毫秒
+     */
+    private static final long FLUSH_INTERVAL = 1000;
+    private static volatile DbWriteQueue INSTANCE = null;
+    private final Map<String, DbEntity> mPending = new LinkedHashMap<>();
+    private ScheduledFuture<?> mTimer;
+
+    private DbWriteQueue() {
+
+    }
+
+    static DbWriteQueue getInstance() {
+        if (INSTANCE == null) {
+            synchronized (DbWriteQueue.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new DbWriteQueue();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * 加入队列，队列中已经有同一行的数据时，使用最新的实体替换
+     */
+    synchronized void enqueue(DbEntity entity) {
+        mPending.put(getKey(entity), entity);
+        if (mTimer == null) {
+            //写入数据库比较耗时，到达写入间隔后交给断点记录线程执行
+            mTimer = ExecutorManager.getInstance().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    ExecutorManager.getInstance().executeCheckpoint(new Runnable() {
+                        @Override
+                        public void run() {
+                            flush();
+                        }
+                    });
+                }
+            }, FLUSH_INTERVAL);
+        }
+    }
+
+    /**
+     * 移除队列中该行的数据，数据被删除时调用
+     */
+    synchronized void remove(DbEntity entity) {
+        mPending.remove(getKey(entity));
+    }
+
+    /**
+     * 将队列中的数据立即写入数据库
+     */
+    void flush() {
+        List<DbEntity> entities;
+        synchronized (this) {
+            if (mTimer != null) {
+                ExecutorManager.getInstance().cancel(mTimer);
+                mTimer = null;
+            }
+            if (mPending.isEmpty()) {
+                return;
+            }
+            entities = new ArrayList<>(mPending.values());
+            mPending.clear();
+        }
+        DbUtil.getInstance().modifyData(entities);
+    }
+
+    /**
+     * 查询前调用，只将该表及其关联表在队列中的数据写入数据库，其它表的数据继续等待写入间隔。
+     * 队列中没有相关数据时不会写数据库
+     */
+    void flush(Class<? extends DbEntity> clazz) {
+        List<DbEntity> entities = new ArrayList<>();
+        synchronized (this) {
+            if (mPending.isEmpty()) {
+                return;
+            }
+            Set<Class<?>> tables = getTables(clazz);
+            Iterator<DbEntity> it = mPending.values().iterator();
+            while (it.hasNext()) {
+                DbEntity entity = it.next();
+                if (tables.contains(entity.getClass())) {
+                    entities.add(entity);
+                    it.remove();
+                }
+            }
+            if (mPending.isEmpty() && mTimer != null) {
+                ExecutorManager.getInstance().cancel(mTimer);
+                mTimer = null;
+            }
+        }
+        if (!entities.isEmpty()) {
+            DbUtil.getInstance().modifyData(entities);
+        }
+    }
+
+    /**
+     * 查询该表时会读取的表，包括{@link OneToOne}和{@link OneToMany}关联的表
+     */
+    private Set<Class<?>> getTables(Class<? extends DbEntity> clazz) {
+        Set<Class<?>> tables = new HashSet<>();
+        tables.add(clazz);
+        for (Field field : CommonUtil.getAllFields(clazz)) {
+            OneToOne oneToOne = field.getAnnotation(OneToOne.class);
+            if (oneToOne != null) {
+                tables.add(oneToOne.table());
+            }
+            OneToMany oneToMany = field.getAnnotation(OneToMany.class);
+            if (oneToMany != null) {
+                tables.add(oneToMany.table());
+            }
+        }
+        return tables;
+    }
+
+    private String getKey(DbEntity entity) {
+        return entity.getClass().getName() + "$$" + entity.rowID;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arialyy.aria.orm;
+
+import android.database.Cursor;
+
+/**
+ * 数据库实体映射接口，由AriaCompiler为每个数据库实体生成实现类，类名为：实体类名$$DbMapper。
+ * 映射类只处理字符串和基本类型的字段，其它字段仍然通过反射处理
+ */
+public interface IDbMapper<T extends DbEntity> {
+
+    /**
+     * 映射类处理的字段名
+     */
+    String[] getColumns();
+
+    /**
+     * 创建实体
+     */
+    T newInstance();
+
+    /**
+     * 将游标当前行中{@link #getColumns()}的字段设置到实体中
+     */
+    void readCursor(T entity, Cursor cursor);
+
+    /**
+     * 按照{@link #getColumns()}的顺序获取字段保存到数据库的值
+     *
+     * @param values    保存字段值的数组
+     * @param nullValue 字段值为null时保存的值
+     */
+    void getValues(T entity, String[] values, String nullValue);
+}
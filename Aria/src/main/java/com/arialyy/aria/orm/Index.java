@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arialyy.aria.orm;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 为字段创建索引，查询条件中经常使用的字段需要添加该注解。
+ * 索引名相同的字段会创建为一个联合索引，没有设置索引名时，使用字段名作为索引名；
+ * 联合索引中的字段在父类中，或者父类的字段在其它子类中需要单独的索引时，使用{@link #columns()}添加其它字段；
+ * {@link Primary}注解的字段会自动创建索引
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Index {
+    /**
+     * 索引名
+     */
+    String value() default "";
+
+    /**
+     * 联合索引中排在该字段之后的其它字段
+     */
+    String[] columns() default {};
+}
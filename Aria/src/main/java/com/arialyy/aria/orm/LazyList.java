@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arialyy.aria.orm;
+
+import java.lang.reflect.Field;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 延迟加载的一对多列表，第一次访问时才查询关联数据
+ */
+final class LazyList<T extends DbEntity> extends AbstractList<T> {
+    private final Class<T> mClazz;
+    private final String mKey;
+    private final String mPrimaryData;
+    private List<T> mData;
+
+    /**
+     * @param field       被{@link OneToMany}注解的字段
+     * @param primaryData 当前实体的主键值
+     */
+    LazyList(Field field, String primaryData) {
+        OneToMany oneToMany = field.getAnnotation(OneToMany.class);
+        mClazz = (Class<T>) oneToMany.table();
+        mKey = oneToMany.key();
+        mPrimaryData = primaryData;
+    }
+
+    private synchronized List<T> getData() {
+        if (mData == null) {
+            List<T> data = DbEntity.findDatas(mClazz, mKey + "=?", mPrimaryData);
+            mData = data == null ? new ArrayList<T>() : new ArrayList<>(data);
+        }
+        return mData;
+    }
+
+    @Override
+    public T get(int index) {
+        return getData().get(index);
+    }
+
+    @Override
+    public int size() {
+        return getData().size();
+    }
+
+    @Override
+    public T set(int index, T element) {
+        return getData().set(index, element);
+    }
+
+    @Override
+    public void add(int index, T element) {
+        getData().add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public T remove(int index) {
+        modCount++;
+        return getData().remove(index);
+    }
+}
@@ -36,4 +36,9 @@ public @interface OneToMany {
      * 关联的主键
      */
     String key();
+
+    /**
+     * 是否延迟加载，为true时查询不会加载关联数据，第一次访问列表时才查询
+     */
+    boolean lazy() default false;
 }
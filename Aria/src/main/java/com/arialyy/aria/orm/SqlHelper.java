@@ -20,6 +20,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 import android.util.Log;
@@ -31,10 +32,16 @@ import com.arialyy.aria.util.CommonUtil;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by lyy on 2015/11/2.
@@ -49,8 +56,48 @@ final class SqlHelper extends SQLiteOpenHelper {
     private static final int FIND_DATA = 4;
     private static final int FIND_ALL_DATA = 5;
     private static final int DEL_DATA = 6;
+    /**
+     * 缓存的最大语句数
+     */
+    private static final int MAX_STATEMENT_CACHE = 32;
 
     private static volatile SqlHelper INSTANCE = null;
+    /**
+     * 已编译语句的缓存，key为表名 $$ 操作类型 $$ 条件，只在{@link DbSession}的写锁或表结构锁中访问
+     */
+    private static final Map<String, SQLiteStatement> STATEMENT_CACHE =
+            new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+                    if (size() > MAX_STATEMENT_CACHE) {
+                        eldest.getValue().close();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+    /**
+     * 实体需要通过反射保存到数据库的字段，不包括映射类处理的字段
+     */
+    private static final Map<Class, List<Field>> COLUMN_CACHE = new ConcurrentHashMap<>();
+    /**
+     * AriaCompiler生成的映射类，没有映射类的实体保存null
+     */
+    private static final Map<Class, IDbMapper> MAPPER_CACHE =
+            Collections.synchronizedMap(new HashMap<Class, IDbMapper>());
+    private static final String[] EMPTY_COLUMNS = new String[0];
+    /**
+     * 主键字段名，该字段是SQLite的rowid的别名
+     */
+    private static final String ROW_ID = "rowid";
+    /**
+     * 单次IN查询的最大参数数，SQLite默认最多支持999个参数
+     */
+    private static final int MAX_IN_PARAMS = 500;
+    /**
+     * 缓存的语句所属的数据库
+     */
+    private static SQLiteDatabase sCacheDb;
 
     private SqlHelper(Context context) {
         super(context, DBConfig.DB_NAME, null, DBConfig.VERSION);
@@ -69,6 +116,8 @@ final class SqlHelper extends SQLiteOpenHelper {
 
                     if (!tableExists(db, clazz)) {
                         createTable(db, clazz, null);
+                    } else {
+                        createIndexes(db, clazz, tableName);
                     }
                 }
             }
@@ -77,22 +126,18 @@ final class SqlHelper extends SQLiteOpenHelper {
     }
 
     /**
-     * 条件查寻数据
+     * 条件查寻数据，条件中的值通过参数绑定，相同条件的sql语句不变，可以使用SQLite的语句缓存
      */
-    static synchronized <T extends DbEntity> List<T> findData(SQLiteDatabase db, Class<T> clazz,
+    static <T extends DbEntity> List<T> findData(SQLiteDatabase db, Class<T> clazz,
                                                               String... expression) {
         db = checkDb(db);
         CheckUtil.checkSqlExpression(expression);
         String sql =
                 "SELECT rowid, * FROM " + CommonUtil.getClassName(clazz) + " WHERE " + expression[0] + " ";
-        sql = sql.replace("?", "%s");
-        Object[] params = new String[expression.length - 1];
-        for (int i = 0, len = params.length; i < len; i++) {
-            params[i] = "'" + expression[i + 1] + "'";
-        }
-        sql = String.format(sql, params);
+        String[] params = new String[expression.length - 1];
+        System.arraycopy(expression, 1, params, 0, params.length);
         print(FIND_DATA, sql);
-        Cursor cursor = db.rawQuery(sql, null);
+        Cursor cursor = db.rawQuery(sql, params);
         List<T> data = cursor.getCount() > 0 ? newInstanceEntity(db, clazz, cursor) : null;
         closeCursor(cursor);
         close(db);
@@ -102,7 +147,7 @@ final class SqlHelper extends SQLiteOpenHelper {
     /**
      * 条件查寻数据
      */
-    static synchronized <T extends DbEntity> List<T> findData(SQLiteDatabase db, String tableName,
+    static <T extends DbEntity> List<T> findData(SQLiteDatabase db, String tableName,
                                                               String... expression) {
         Class<T> clazz = null;
         try {
@@ -117,7 +162,7 @@ final class SqlHelper extends SQLiteOpenHelper {
      * 条件查寻数据
      */
     @Deprecated
-    static synchronized <T extends DbEntity> List<T> findData(SQLiteDatabase db,
+    static <T extends DbEntity> List<T> findData(SQLiteDatabase db,
                                                               Class<T> clazz, @NonNull String[] wheres, @NonNull String[] values) {
         db = checkDb(db);
         if (wheres.length <= 0 || values.length <= 0) {
@@ -131,12 +176,12 @@ final class SqlHelper extends SQLiteOpenHelper {
         sb.append("SELECT rowid, * FROM ").append(CommonUtil.getClassName(clazz)).append(" where ");
         int i = 0;
         for (Object where : wheres) {
-            sb.append(where).append("=").append("'").append(values[i]).append("'");
+            sb.append(where).append("=?");
             sb.append(i >= wheres.length - 1 ? "" : " AND ");
             i++;
         }
         print(FIND_DATA, sb.toString());
-        Cursor cursor = db.rawQuery(sb.toString(), null);
+        Cursor cursor = db.rawQuery(sb.toString(), values);
         List<T> data = cursor.getCount() > 0 ? newInstanceEntity(db, clazz, cursor) : null;
         closeCursor(cursor);
         close(db);
@@ -146,7 +191,7 @@ final class SqlHelper extends SQLiteOpenHelper {
     /**
      * 查找表的所有数据
      */
-    static synchronized <T extends DbEntity> List<T> findAllData(SQLiteDatabase db, Class<T> clazz) {
+    static <T extends DbEntity> List<T> findAllData(SQLiteDatabase db, Class<T> clazz) {
         db = checkDb(db);
         StringBuilder sb = new StringBuilder();
         sb.append("SELECT rowid, * FROM ").append(CommonUtil.getClassName(clazz));
@@ -158,71 +203,96 @@ final class SqlHelper extends SQLiteOpenHelper {
         return data;
     }
 
+    /**
+     * 按照{@link DbQuery}的条件、排序和分页查询数据
+     */
+    static <T extends DbEntity> List<T> findData(SQLiteDatabase db, DbQuery<T> query) {
+        db = checkDb(db);
+        String sql = query.getSql();
+        print(FIND_DATA, sql);
+        Cursor cursor = db.rawQuery(sql, query.getArgs());
+        List<T> data =
+                cursor.getCount() > 0 ? newInstanceEntity(db, query.getEntityClass(), cursor) : null;
+        closeCursor(cursor);
+        close(db);
+        return data;
+    }
+
+    /**
+     * 按照{@link DbQuery}的条件创建流式读取的迭代器，游标和读会话由迭代器关闭
+     *
+     * @param session 已经开始读操作的会话
+     */
+    static <T extends DbEntity> DbIterator<T> iterator(SQLiteDatabase db, DbSession session,
+                                                                    DbQuery<T> query) {
+        db = checkDb(db);
+        String sql = query.getSql();
+        print(FIND_DATA, sql);
+        return new DbIterator<>(db, session, query.getEntityClass(), db.rawQuery(sql, query.getArgs()));
+    }
+
     /**
      * 删除某条数据
      */
-    static synchronized <T extends DbEntity> void delData(SQLiteDatabase db, Class<T> clazz,
+    static <T extends DbEntity> void delData(SQLiteDatabase db, Class<T> clazz,
                                                           String... expression) {
         db = checkDb(db);
         CheckUtil.checkSqlExpression(expression);
-        String sql = "DELETE FROM " + CommonUtil.getClassName(clazz) + " WHERE " + expression[0] + " ";
-        sql = sql.replace("?", "%s");
-        Object[] params = new String[expression.length - 1];
-        for (int i = 0, len = params.length; i < len; i++) {
-            params[i] = "'" + expression[i + 1] + "'";
-        }
-        sql = String.format(sql, params);
-        SqlHelper.print(DEL_DATA, sql);
-        db.execSQL(sql);
+        String tableName = CommonUtil.getClassName(clazz);
+        String key = tableName + "$$" + DEL_DATA + "$$" + expression[0];
+        SQLiteStatement statement = STATEMENT_CACHE.get(key);
+        if (statement == null || db != sCacheDb) {
+            String sql = "DELETE FROM " + tableName + " WHERE " + expression[0] + " ";
+            SqlHelper.print(DEL_DATA, sql);
+            statement = compileStatement(db, key, sql);
+        }
+        statement.clearBindings();
+        for (int i = 1; i < expression.length; i++) {
+            bindValue(statement, i, expression[i]);
+        }
+        statement.execute();
         close(db);
     }
 
     /**
      * 修改某行数据
      */
-    static synchronized void modifyData(SQLiteDatabase db, DbEntity dbEntity) {
+    static void modifyData(SQLiteDatabase db, DbEntity dbEntity) {
         db = checkDb(db);
         Class<?> clazz = dbEntity.getClass();
-        List<Field> fields = CommonUtil.getAllFields(clazz);
-        if (fields != null && fields.size() > 0) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("UPDATE ").append(CommonUtil.getClassName(dbEntity)).append(" SET ");
-            int i = 0;
-            for (Field field : fields) {
-                field.setAccessible(true);
-                if (SqlUtil.ignoreField(field)) {
-                    continue;
+        IDbMapper mapper = getMapper(clazz);
+        String[] mapped = mapper == null ? EMPTY_COLUMNS : mapper.getColumns();
+        List<Field> fields = getColumns(clazz);
+        if (mapped.length + fields.size() > 0) {
+            String tableName = CommonUtil.getClassName(dbEntity);
+            String key = tableName + "$$" + MODIFY_DATA;
+            SQLiteStatement statement = STATEMENT_CACHE.get(key);
+            if (statement == null || db != sCacheDb) {
+                StringBuilder sb = new StringBuilder();
+                sb.append("UPDATE ").append(tableName).append(" SET ");
+                int i = 0;
+                for (String column : mapped) {
+                    sb.append(i > 0 ? ", " : "");
+                    sb.append(column).append("=?");
+                    i++;
                 }
-                sb.append(i > 0 ? ", " : "");
-                try {
-                    String value;
-                    sb.append(field.getName()).append("='");
-                    Type type = field.getType();
-                    if (type == Map.class) {
-                        value = SqlUtil.map2Str((Map<String, String>) field.get(dbEntity));
-                    } else if (type == List.class) {
-                        if (SqlUtil.isOneToMany(field)) {
-                            value = SqlUtil.getOneToManyElementParams(field);
-                        } else {
-                            value = SqlUtil.list2Str(dbEntity, field);
-                        }
-                    } else if (SqlUtil.isOneToOne(field)) {
-                        value = SqlUtil.getOneToOneParams(field);
-                    } else {
-                        Object obj = field.get(dbEntity);
-                        value = obj == null ? "" : obj.toString();
-                    }
-
-                    sb.append(value == null ? "" : value);
-                    sb.append("'");
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
+                for (Field field : fields) {
+                    sb.append(i > 0 ? ", " : "");
+                    sb.append(field.getName()).append("=?");
+                    i++;
                 }
+                sb.append(" where rowid=?");
+                print(MODIFY_DATA, sb.toString());
+                statement = compileStatement(db, key, sb.toString());
+            }
+            statement.clearBindings();
+            int i = bindMappedValues(statement, mapper, mapped, dbEntity, "");
+            for (Field field : fields) {
+                bindValue(statement, i, getColumnValue(dbEntity, field, ""));
                 i++;
             }
-            sb.append(" where rowid=").append(dbEntity.rowID);
-            print(MODIFY_DATA, sb.toString());
-            db.execSQL(sb.toString());
+            statement.bindLong(i, dbEntity.rowID);
+            statement.execute();
         }
         close(db);
     }
@@ -230,58 +300,178 @@ final class SqlHelper extends SQLiteOpenHelper {
     /**
      * 插入数据
      */
-    static synchronized void insertData(SQLiteDatabase db, DbEntity dbEntity) {
+    static void insertData(SQLiteDatabase db, DbEntity dbEntity) {
         db = checkDb(db);
         Class<?> clazz = dbEntity.getClass();
-        List<Field> fields = CommonUtil.getAllFields(clazz);
-        if (fields != null && fields.size() > 0) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("INSERT INTO ").append(CommonUtil.getClassName(dbEntity)).append("(");
-            int i = 0;
-            for (Field field : fields) {
-                field.setAccessible(true);
-                if (SqlUtil.ignoreField(field)) {
-                    continue;
+        IDbMapper mapper = getMapper(clazz);
+        String[] mapped = mapper == null ? EMPTY_COLUMNS : mapper.getColumns();
+        List<Field> fields = getColumns(clazz);
+        if (mapped.length + fields.size() > 0) {
+            String tableName = CommonUtil.getClassName(dbEntity);
+            String key = tableName + "$$" + INSERT_DATA;
+            SQLiteStatement statement = STATEMENT_CACHE.get(key);
+            if (statement == null || db != sCacheDb) {
+                StringBuilder sb = new StringBuilder();
+                StringBuilder values = new StringBuilder();
+                sb.append("INSERT INTO ").append(tableName).append("(");
+                int i = 0;
+                for (String column : mapped) {
+                    sb.append(i > 0 ? ", " : "");
+                    sb.append(column);
+                    values.append(i > 0 ? ", ?" : "?");
+                    i++;
                 }
-                sb.append(i > 0 ? ", " : "");
-                sb.append(field.getName());
+                for (Field field : fields) {
+                    sb.append(i > 0 ? ", " : "");
+                    sb.append(field.getName());
+                    values.append(i > 0 ? ", ?" : "?");
+                    i++;
+                }
+                sb.append(") VALUES (").append(values).append(")");
+                print(INSERT_DATA, sb.toString());
+                statement = compileStatement(db, key, sb.toString());
+            }
+            statement.clearBindings();
+            int i = bindMappedValues(statement, mapper, mapped, dbEntity, "null");
+            for (Field field : fields) {
+                bindValue(statement, i, getColumnValue(dbEntity, field, "null"));
                 i++;
             }
-            sb.append(") VALUES (");
-            i = 0;
-            try {
+            statement.executeInsert();
+        }
+        close(db);
+    }
+
+    /**
+     * 获取实体需要通过反射保存到数据库的字段，映射类已经处理的字段不在其中
+     */
+    private static List<Field> getColumns(Class clazz) {
+        List<Field> columns = COLUMN_CACHE.get(clazz);
+        if (columns == null) {
+            columns = new ArrayList<>();
+            IDbMapper mapper = getMapper(clazz);
+            Set<String> mapped = new HashSet<>();
+            if (mapper != null) {
+                Collections.addAll(mapped, mapper.getColumns());
+            }
+            List<Field> fields = CommonUtil.getAllFields(clazz);
+            if (fields != null) {
                 for (Field field : fields) {
                     field.setAccessible(true);
-                    if (SqlUtil.ignoreField(field)) {
+                    if (SqlUtil.ignoreField(field) || mapped.contains(field.getName())) {
                         continue;
                     }
-                    sb.append(i > 0 ? ", " : "");
-                    sb.append("'");
-                    Type type = field.getType();
-                    if (type == Map.class) {
-                        sb.append(SqlUtil.map2Str((Map<String, String>) field.get(dbEntity)));
-                    } else if (type == List.class) {
-                        if (SqlUtil.isOneToMany(field)) {
-                            sb.append(SqlUtil.getOneToManyElementParams(field));
-                        } else {
-                            sb.append(SqlUtil.list2Str(dbEntity, field));
-                        }
-                    } else if (SqlUtil.isOneToOne(field)) {
-                        sb.append(SqlUtil.getOneToOneParams(field));
-                    } else {
-                        sb.append(field.get(dbEntity));
-                    }
-                    sb.append("'");
-                    i++;
+                    columns.add(field);
                 }
-            } catch (IllegalAccessException e) {
-                e.printStackTrace();
             }
-            sb.append(")");
-            print(INSERT_DATA, sb.toString());
-            db.execSQL(sb.toString());
+            COLUMN_CACHE.put(clazz, columns);
         }
-        close(db);
+        return columns;
+    }
+
+    /**
+     * 获取AriaCompiler生成的映射类，没有映射类时返回null，使用反射处理所有字段
+     */
+    private static IDbMapper getMapper(Class clazz) {
+        if (MAPPER_CACHE.containsKey(clazz)) {
+            return MAPPER_CACHE.get(clazz);
+        }
+        IDbMapper mapper = null;
+        try {
+            Class<?> mapperClazz = Class.forName(clazz.getName() + "$$DbMapper");
+            mapper = (IDbMapper) mapperClazz.newInstance();
+        } catch (ClassNotFoundException e) {
+            //没有使用AriaCompiler编译的实体
+        } catch (InstantiationException e) {
+            e.printStackTrace();
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        }
+        MAPPER_CACHE.put(clazz, mapper);
+        return mapper;
+    }
+
+    /**
+     * 绑定映射类处理的字段
+     *
+     * @return 下一个参数的位置
+     */
+    private static int bindMappedValues(SQLiteStatement statement, IDbMapper mapper, String[] mapped,
+                                        DbEntity dbEntity, String nullValue) {
+        int i = 1;
+        if (mapper != null && mapped.length > 0) {
+            String[] values = new String[mapped.length];
+            mapper.getValues(dbEntity, values, nullValue);
+            for (String value : values) {
+                bindValue(statement, i, value);
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * 获取字段保存到数据库的值，保存格式和拼接sql时保持一致
+     *
+     * @param nullValue 字段值为null时保存的值
+     */
+    private static String getColumnValue(DbEntity dbEntity, Field field, String nullValue) {
+        try {
+            String value;
+            Type type = field.getType();
+            if (type == Map.class) {
+                value = SqlUtil.map2Str((Map<String, String>) field.get(dbEntity));
+            } else if (type == List.class) {
+                if (SqlUtil.isOneToMany(field)) {
+                    value = SqlUtil.getOneToManyElementParams(field);
+                } else {
+                    value = SqlUtil.list2Str(dbEntity, field);
+                }
+            } else if (SqlUtil.isOneToOne(field)) {
+                value = SqlUtil.getOneToOneParams(field);
+            } else {
+                Object obj = field.get(dbEntity);
+                value = obj == null ? nullValue : obj.toString();
+            }
+            return value == null ? nullValue : value;
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        }
+        return nullValue;
+    }
+
+    /**
+     * 编译语句并加入缓存，数据库对象改变后之前缓存的语句全部失效
+     */
+    private static SQLiteStatement compileStatement(SQLiteDatabase db, String key, String sql) {
+        if (db != sCacheDb) {
+            clearStatementCache();
+            sCacheDb = db;
+        }
+        SQLiteStatement statement = db.compileStatement(sql);
+        SQLiteStatement old = STATEMENT_CACHE.put(key, statement);
+        if (old != null) {
+            old.close();
+        }
+        return statement;
+    }
+
+    private static void bindValue(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * 清空语句缓存，表结构改变后调用
+     */
+    static void clearStatementCache() {
+        for (SQLiteStatement statement : STATEMENT_CACHE.values()) {
+            statement.close();
+        }
+        STATEMENT_CACHE.clear();
     }
 
     /**
@@ -290,7 +480,7 @@ final class SqlHelper extends SQLiteOpenHelper {
      * @param clazz 数据库实体
      * @return true，该数据库实体对应的表存在；false，不存在
      */
-    static synchronized boolean tableExists(SQLiteDatabase db, Class clazz) {
+    static boolean tableExists(SQLiteDatabase db, Class clazz) {
         db = checkDb(db);
         Cursor cursor = null;
         try {
@@ -321,14 +511,18 @@ final class SqlHelper extends SQLiteOpenHelper {
      * @param clazz     数据库实体
      * @param tableName 数据库实体的类名
      */
-    static synchronized void createTable(SQLiteDatabase db, Class clazz, String tableName) {
+    static void createTable(SQLiteDatabase db, Class clazz, String tableName) {
         db = checkDb(db);
+        clearStatementCache();
         List<Field> fields = CommonUtil.getAllFields(clazz);
         if (fields != null && fields.size() > 0) {
+            if (TextUtils.isEmpty(tableName)) {
+                tableName = CommonUtil.getClassName(clazz);
+            }
             StringBuilder sb = new StringBuilder();
-            sb.append("create table ")
-                    .append(TextUtils.isEmpty(tableName) ? CommonUtil.getClassName(clazz) : tableName)
-                    .append("(");
+            sb.append("create table ").append(tableName).append("(");
+            //显式声明rowid为主键，保证rowid不会因为VACUUM而改变，并且删除的rowid不会被复用
+            sb.append(ROW_ID).append(" INTEGER PRIMARY KEY AUTOINCREMENT,");
             for (Field field : fields) {
                 field.setAccessible(true);
                 if (SqlUtil.ignoreField(field)) {
@@ -369,10 +563,53 @@ final class SqlHelper extends SQLiteOpenHelper {
             str = str.substring(0, str.length() - 1) + ");";
             print(CREATE_TABLE, str);
             db.execSQL(str);
+            createIndexes(db, clazz, tableName);
         }
         close(db);
     }
 
+    /**
+     * 创建{@link Index}、{@link Primary}注解的字段的索引，索引已经存在时不做处理，
+     * 实体中已经不存在的索引会被删除
+     */
+    private static void createIndexes(SQLiteDatabase db, Class clazz, String tableName) {
+        Map<String, List<String>> indexes = new LinkedHashMap<>();
+        List<Field> fields = CommonUtil.getAllFields(clazz);
+        for (Field field : fields) {
+            if (SqlUtil.ignoreField(field)) {
+                continue;
+            }
+            String name = SqlUtil.getIndexName(field);
+            if (name == null) {
+                continue;
+            }
+            List<String> columns = indexes.get(name);
+            if (columns == null) {
+                columns = new ArrayList<>();
+                indexes.put(name, columns);
+            }
+            columns.add(field.getName());
+            Index index = field.getAnnotation(Index.class);
+            if (index != null) {
+                Collections.addAll(columns, index.columns());
+            }
+        }
+        dropStaleIndexes(db, tableName, indexes.keySet());
+        for (Map.Entry<String, List<String>> entry : indexes.entrySet()) {
+            String sql = "CREATE INDEX IF NOT EXISTS "
+                    + tableName
+                    + "_"
+                    + entry.getKey()
+                    + " ON "
+                    + tableName
+                    + "("
+                    + TextUtils.join(", ", entry.getValue())
+                    + ")";
+            print(CREATE_TABLE, sql);
+            db.execSQL(sql);
+        }
+    }
+
     /**
      * 打印数据库日志
      *
@@ -409,78 +646,23 @@ final class SqlHelper extends SQLiteOpenHelper {
     /**
      * 根据数据游标创建一个具体的对象
      */
-    private static synchronized <T extends DbEntity> List<T> newInstanceEntity(SQLiteDatabase db,
+    private static <T extends DbEntity> List<T> newInstanceEntity(SQLiteDatabase db,
                                                                                Class<T> clazz, Cursor cursor) {
-        List<Field> fields = CommonUtil.getAllFields(clazz);
+        IDbMapper<T> mapper = getMapper(clazz);
+        List<Field> fields = getColumns(clazz);
         List<T> entitys = new ArrayList<>();
-        if (fields != null && fields.size() > 0) {
+        //关联字段在所有行读取完成后批量查询，key为关联字段，value为需要设置该字段的实体和它的主键值
+        Map<Field, List<T>> relationEntities = new LinkedHashMap<>();
+        Map<Field, List<String>> relationKeys = new HashMap<>();
+        if (mapper != null || fields.size() > 0) {
             try {
                 while (cursor.moveToNext()) {
-                    T entity = clazz.newInstance();
-                    for (Field field : fields) {
-                        field.setAccessible(true);
-                        if (SqlUtil.ignoreField(field)) {
-                            continue;
-                        }
-                        Class<?> type = field.getType();
-                        int column = cursor.getColumnIndex(field.getName());
-                        if (column == -1) continue;
-                        if (type == String.class) {
-                            field.set(entity, cursor.getString(column));
-                        } else if (type == int.class || type == Integer.class) {
-                            field.setInt(entity, cursor.getInt(column));
-                        } else if (type == float.class || type == Float.class) {
-                            field.setFloat(entity, cursor.getFloat(column));
-                        } else if (type == double.class || type == Double.class) {
-                            field.setDouble(entity, cursor.getDouble(column));
-                        } else if (type == long.class || type == Long.class) {
-                            field.setLong(entity, cursor.getLong(column));
-                        } else if (type == boolean.class || type == Boolean.class) {
-                            field.setBoolean(entity, !cursor.getString(column).equalsIgnoreCase("false"));
-                        } else if (type == java.util.Date.class || type == java.sql.Date.class) {
-                            field.set(entity, new Date(cursor.getString(column)));
-                        } else if (type == byte[].class) {
-                            field.set(entity, cursor.getBlob(column));
-                        } else if (type == Map.class) {
-                            field.set(entity, SqlUtil.str2Map(cursor.getString(column)));
-                        } else if (type == List.class) {
-                            String value = cursor.getString(column);
-                            if (SqlUtil.isOneToMany(field)) {
-                                //主键字段
-                                String primaryKey = SqlUtil.getPrimaryName(clazz);
-                                if (TextUtils.isEmpty(primaryKey)) {
-                                    throw new IllegalArgumentException("List中的元素对象必须需要@Primary注解的字段");
-                                }
-                                //list字段保存的数据
-                                int kc = cursor.getColumnIndex(primaryKey);
-                                String primaryData = cursor.getString(kc);
-                                if (TextUtils.isEmpty(primaryData)) continue;
-                                List<T> list = findForeignData(db, primaryData, value);
-                                if (list == null) continue;
-                                field.set(entity, findForeignData(db, primaryData, value));
-                            } else {
-                                field.set(entity, SqlUtil.str2List(value, field));
-                            }
-                        } else if (SqlUtil.isOneToOne(field)) {
-                            String primaryKey = SqlUtil.getPrimaryName(clazz);
-                            if (TextUtils.isEmpty(primaryKey)) {
-                                throw new IllegalArgumentException("@OneToOne的注解对象必须需要@Primary注解的字段");
-                            }
-                            int kc = cursor.getColumnIndex(primaryKey);
-                            String params = cursor.getString(column);
-                            String primaryData = cursor.getString(kc);
-                            if (TextUtils.isEmpty(primaryData) || primaryData.equalsIgnoreCase("null"))
-                                continue;
-                            List<T> list = findForeignData(db, primaryData, params);
-                            if (list != null && list.size() > 0) {
-                                field.set(entity, list.get(0));
-                            }
-                        }
-                    }
-                    entity.rowID = cursor.getInt(cursor.getColumnIndex("rowid"));
-                    entitys.add(entity);
+                    entitys.add(readRow(clazz, cursor, mapper, fields, relationEntities, relationKeys));
                 }
                 closeCursor(cursor);
+                for (Field field : relationEntities.keySet()) {
+                    setRelation(db, field, relationEntities.get(field), relationKeys.get(field));
+                }
             } catch (InstantiationException e) {
                 e.printStackTrace();
             } catch (IllegalAccessException e) {
@@ -491,15 +673,178 @@ final class SqlHelper extends SQLiteOpenHelper {
     }
 
     /**
-     * 查找一对多、一对一的关联数据
+     * 读取游标当前行的数据，关联字段只记录到relationEntities和relationKeys中，由调用者查询
+     */
+    private static <T extends DbEntity> T readRow(Class<T> clazz, Cursor cursor, IDbMapper<T> mapper,
+                                                  List<Field> fields, Map<Field, List<T>> relationEntities,
+                                                  Map<Field, List<String>> relationKeys)
+            throws InstantiationException, IllegalAccessException {
+        T entity;
+        if (mapper != null) {
+            entity = mapper.newInstance();
+            mapper.readCursor(entity, cursor);
+        } else {
+            entity = clazz.newInstance();
+        }
+        for (Field field : fields) {
+            Class<?> type = field.getType();
+            int column = cursor.getColumnIndex(field.getName());
+            if (column == -1) continue;
+            if (type == String.class) {
+                field.set(entity, cursor.getString(column));
+            } else if (type == int.class || type == Integer.class) {
+                field.setInt(entity, cursor.getInt(column));
+            } else if (type == float.class || type == Float.class) {
+                field.setFloat(entity, cursor.getFloat(column));
+            } else if (type == double.class || type == Double.class) {
+                field.setDouble(entity, cursor.getDouble(column));
+            } else if (type == long.class || type == Long.class) {
+                field.setLong(entity, cursor.getLong(column));
+            } else if (type == boolean.class || type == Boolean.class) {
+                field.setBoolean(entity, !cursor.getString(column).equalsIgnoreCase("false"));
+            } else if (type == java.util.Date.class || type == java.sql.Date.class) {
+                field.set(entity, new Date(cursor.getString(column)));
+            } else if (type == byte[].class) {
+                field.set(entity, cursor.getBlob(column));
+            } else if (type == Map.class) {
+                field.set(entity, SqlUtil.str2Map(cursor.getString(column)));
+            } else if (type == List.class) {
+                String value = cursor.getString(column);
+                if (SqlUtil.isOneToMany(field)) {
+                    //主键字段
+                    String primaryKey = SqlUtil.getPrimaryName(clazz);
+                    if (TextUtils.isEmpty(primaryKey)) {
+                        throw new IllegalArgumentException("List中的元素对象必须需要@Primary注解的字段");
+                    }
+                    //list字段保存的数据
+                    int kc = cursor.getColumnIndex(primaryKey);
+                    String primaryData = cursor.getString(kc);
+                    if (TextUtils.isEmpty(primaryData)) continue;
+                    if (SqlUtil.isLazy(field)) {
+                        field.set(entity, new LazyList<>(field, primaryData));
+                    } else {
+                        addRelation(relationEntities, relationKeys, field, entity, primaryData);
+                    }
+                } else {
+                    field.set(entity, SqlUtil.str2List(value, field));
+                }
+            } else if (SqlUtil.isOneToOne(field)) {
+                String primaryKey = SqlUtil.getPrimaryName(clazz);
+                if (TextUtils.isEmpty(primaryKey)) {
+                    throw new IllegalArgumentException("@OneToOne的注解对象必须需要@Primary注解的字段");
+                }
+                int kc = cursor.getColumnIndex(primaryKey);
+                String primaryData = cursor.getString(kc);
+                if (TextUtils.isEmpty(primaryData) || primaryData.equalsIgnoreCase("null"))
+                    continue;
+                addRelation(relationEntities, relationKeys, field, entity, primaryData);
+            }
+        }
+        entity.rowID = cursor.getInt(cursor.getColumnIndex("rowid"));
+        return entity;
+    }
+
+    /**
+     * 读取游标当前行的数据并创建实体，用于流式读取
+     */
+    static <T extends DbEntity> T readEntity(SQLiteDatabase db, Class<T> clazz,
+                                                          Cursor cursor) {
+        Map<Field, List<T>> relationEntities = new LinkedHashMap<>();
+        Map<Field, List<String>> relationKeys = new HashMap<>();
+        try {
+            T entity = readRow(clazz, cursor, getMapper(clazz), getColumns(clazz), relationEntities,
+                    relationKeys);
+            for (Field field : relationEntities.keySet()) {
+                setRelation(checkDb(db), field, relationEntities.get(field), relationKeys.get(field));
+            }
+            return entity;
+        } catch (InstantiationException e) {
+            e.printStackTrace();
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * 记录需要批量查询的关联字段
+     */
+    private static <T extends DbEntity> void addRelation(Map<Field, List<T>> relationEntities,
+                                                         Map<Field, List<String>> relationKeys, Field field, T entity, String primaryData) {
+        List<T> entities = relationEntities.get(field);
+        if (entities == null) {
+            entities = new ArrayList<>();
+            relationEntities.put(field, entities);
+            relationKeys.put(field, new ArrayList<String>());
+        }
+        entities.add(entity);
+        relationKeys.get(field).add(primaryData);
+    }
+
+    /**
+     * 一次查询出所有实体的关联数据，并设置到关联字段中
+     *
+     * @param entities 需要设置关联字段的实体
+     * @param keys     实体对应的主键值
+     */
+    private static <T extends DbEntity> void setRelation(SQLiteDatabase db, Field field,
+                                                         List<T> entities, List<String> keys) throws IllegalAccessException {
+        boolean isOneToOne = SqlUtil.isOneToOne(field);
+        String childParams =
+                isOneToOne ? SqlUtil.getOneToOneParams(field) : SqlUtil.getOneToManyElementParams(field);
+        Map<String, List<DbEntity>> children = findForeignData(db, keys, childParams);
+        for (int i = 0, size = entities.size(); i < size; i++) {
+            List<DbEntity> list = children.get(keys.get(i));
+            if (list == null || list.isEmpty()) continue;
+            field.set(entities.get(i), isOneToOne ? list.get(0) : new ArrayList<>(list));
+        }
+    }
+
+    /**
+     * 使用IN查询一对多、一对一的关联数据，参数过多时分批查询
      *
-     * @param primary     当前表的主键
+     * @param primaries   当前表的主键值
      * @param childParams 当前表关联数据的类名 $$ 主键名
+     * @return key为关联数据的主键值
      */
-    private static <T extends DbEntity> List<T> findForeignData(SQLiteDatabase db, String primary,
-                                                                String childParams) {
+    private static Map<String, List<DbEntity>> findForeignData(SQLiteDatabase db,
+                                                               List<String> primaries, String childParams) throws IllegalAccessException {
+        Map<String, List<DbEntity>> children = new HashMap<>();
         String[] params = childParams.split("\\$\\$");
-        return findData(db, params[0], params[1] + "=?", primary);
+        Class<? extends DbEntity> clazz;
+        try {
+            clazz = (Class<? extends DbEntity>) Class.forName(params[0]);
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+            return children;
+        }
+        Field keyField = CommonUtil.getField(clazz, params[1]);
+        if (keyField == null) {
+            return children;
+        }
+        List<String> values = new ArrayList<>(new LinkedHashSet<>(primaries));
+        for (int start = 0, size = values.size(); start < size; start += MAX_IN_PARAMS) {
+            List<String> sub = values.subList(start, Math.min(size, start + MAX_IN_PARAMS));
+            StringBuilder where = new StringBuilder(params[1]).append(" IN (");
+            String[] expression = new String[sub.size() + 1];
+            for (int i = 0; i < sub.size(); i++) {
+                where.append(i == 0 ? "?" : ", ?");
+                expression[i + 1] = sub.get(i);
+            }
+            expression[0] = where.append(")").toString();
+            List<? extends DbEntity> list = findData(db, clazz, expression);
+            if (list == null) continue;
+            for (DbEntity child : list) {
+                String key = String.valueOf(keyField.get(child));
+                List<DbEntity> temp = children.get(key);
+                if (temp == null) {
+                    temp = new ArrayList<>();
+                    children.put(key, temp);
+                }
+                temp.add(child);
+            }
+        }
+        return children;
     }
 
     private static void closeCursor(Cursor cursor) {
@@ -558,11 +903,9 @@ final class SqlHelper extends SQLiteOpenHelper {
         for (String tableName : tables) {
             Class clazz = DBConfig.mapping.get(tableName);
             if (tableExists(db, clazz)) {
-                String countColumnSql = "SELECT rowid FROM " + tableName;
-                Cursor cursor = db.rawQuery(countColumnSql, null);
-                int dbColumnNum = cursor.getColumnCount();
-                int newEntityColumnNum = getEntityAttr(clazz);
-                if (dbColumnNum != newEntityColumnNum) {
+                //字段改变或者没有主键的旧表需要重建
+                Set<String> tableColumns = getTableColumns(db, tableName);
+                if (!tableColumns.remove(ROW_ID) || !tableColumns.equals(getEntityColumns(clazz))) {
                     back(db, clazz);
                 }
             }
@@ -570,47 +913,131 @@ final class SqlHelper extends SQLiteOpenHelper {
     }
 
     /**
-     * 备份
+     * 重建表，旧表中的数据和rowid会保留，新增的字段使用实体的默认值
      */
     private void back(SQLiteDatabase db, Class clazz) {
         db = checkDb(db);
-        String oldTableName = CommonUtil.getClassName(clazz);
-        //备份数据
-        List<DbEntity> list = findAllData(db, clazz);
-        //修改原来表名字
-        String alertSql = "alter table " + oldTableName + " rename to " + oldTableName + "_temp";
+        String tableName = CommonUtil.getClassName(clazz);
+        String tempTableName = tableName + "_temp";
         db.beginTransaction();
-        db.execSQL(alertSql);
-        //创建一个原来新表
-        createTable(db, clazz, null);
-        if (list != null && list.size() > 0) {
-            for (DbEntity entity : list) {
-                insertData(db, entity);
+        try {
+            //索引会跟随旧表重命名，需要先删除，否则新表的索引会因为重名而无法创建
+            dropIndexes(db, tableName);
+            db.execSQL("alter table " + tableName + " rename to " + tempTableName);
+            createTable(db, clazz, null);
+            //复制新旧表都有的字段
+            Set<String> oldColumns = getTableColumns(db, tempTableName);
+            oldColumns.remove(ROW_ID);
+            Set<String> newColumns = getTableColumns(db, tableName);
+            newColumns.remove(ROW_ID);
+            Set<String> columns = new HashSet<>(newColumns);
+            columns.retainAll(oldColumns);
+            String columnStr = columns.isEmpty() ? "" : ", " + TextUtils.join(", ", columns);
+            db.execSQL("INSERT INTO " + tableName + "(" + ROW_ID + columnStr + ") SELECT rowid"
+                    + columnStr + " FROM " + tempTableName);
+            //新增的字段设置为实体的默认值
+            newColumns.removeAll(oldColumns);
+            if (!newColumns.isEmpty()) {
+                DbEntity defEntity = (DbEntity) clazz.newInstance();
+                for (Field field : getAllColumns(clazz)) {
+                    if (!newColumns.contains(field.getName())) {
+                        continue;
+                    }
+                    db.execSQL("UPDATE " + tableName + " SET " + field.getName() + "=?",
+                            new Object[]{getColumnValue(defEntity, field, "null")});
+                }
             }
+            db.execSQL("drop table IF EXISTS " + tempTableName);
+            db.setTransactionSuccessful();
+        } catch (InstantiationException e) {
+            e.printStackTrace();
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        } finally {
+            db.endTransaction();
         }
-        //删除原来的表
-        String deleteSQL = "drop table IF EXISTS " + oldTableName + "_temp";
-        db.execSQL(deleteSQL);
-        db.setTransactionSuccessful();
-        db.endTransaction();
         close(db);
     }
 
     /**
-     * 获取实体的字段数
+     * 删除实体中已经不存在的索引，索引改名后旧的索引不会再被使用
+     *
+     * @param names 实体中的索引名
      */
-    private int getEntityAttr(Class clazz) {
-        int count = 1;
+    private static void dropStaleIndexes(SQLiteDatabase db, String tableName, Set<String> names) {
+        List<String> stale = new ArrayList<>();
+        Cursor cursor = db.rawQuery(
+                "SELECT name FROM sqlite_master WHERE type='index' AND tbl_name=? AND sql IS NOT NULL",
+                new String[]{tableName});
+        while (cursor.moveToNext()) {
+            String index = cursor.getString(0);
+            if (!index.startsWith(tableName + "_") || !names.contains(index.substring(tableName.length() + 1))) {
+                stale.add(index);
+            }
+        }
+        closeCursor(cursor);
+        for (String index : stale) {
+            db.execSQL("DROP INDEX IF EXISTS " + index);
+        }
+    }
+
+    /**
+     * 删除表的所有索引
+     */
+    private static void dropIndexes(SQLiteDatabase db, String tableName) {
+        List<String> indexes = new ArrayList<>();
+        Cursor cursor = db.rawQuery(
+                "SELECT name FROM sqlite_master WHERE type='index' AND tbl_name=? AND sql IS NOT NULL",
+                new String[]{tableName});
+        while (cursor.moveToNext()) {
+            indexes.add(cursor.getString(0));
+        }
+        closeCursor(cursor);
+        for (String index : indexes) {
+            db.execSQL("DROP INDEX IF EXISTS " + index);
+        }
+    }
+
+    /**
+     * 获取表中的所有字段名
+     */
+    private static Set<String> getTableColumns(SQLiteDatabase db, String tableName) {
+        Set<String> columns = new HashSet<>();
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + tableName + ")", null);
+        int nameIndex = cursor.getColumnIndex("name");
+        while (cursor.moveToNext()) {
+            columns.add(cursor.getString(nameIndex));
+        }
+        closeCursor(cursor);
+        return columns;
+    }
+
+    /**
+     * 获取实体对应的所有字段名
+     */
+    private static Set<String> getEntityColumns(Class clazz) {
+        Set<String> columns = new HashSet<>();
+        for (Field field : getAllColumns(clazz)) {
+            columns.add(field.getName());
+        }
+        return columns;
+    }
+
+    /**
+     * 获取实体需要保存到数据库的所有字段，包括映射类处理的字段
+     */
+    private static List<Field> getAllColumns(Class clazz) {
+        List<Field> columns = new ArrayList<>();
         List<Field> fields = CommonUtil.getAllFields(clazz);
-        if (fields != null && fields.size() > 0) {
+        if (fields != null) {
             for (Field field : fields) {
                 field.setAccessible(true);
                 if (SqlUtil.ignoreField(field)) {
                     continue;
                 }
-                count++;
+                columns.add(field);
             }
         }
-        return count;
+        return columns;
     }
 }
\ No newline at end of file
@@ -162,6 +162,14 @@ final class SqlUtil {
         return oneToMany != null;
     }
 
+    /**
+     * 判断一对多关联是否延迟加载
+     */
+    static boolean isLazy(Field field) {
+        OneToMany oneToMany = field.getAnnotation(OneToMany.class);
+        return oneToMany != null && oneToMany.lazy();
+    }
+
     /**
      * 判断是否是一对一注解
      */
@@ -178,6 +186,17 @@ final class SqlUtil {
         return pk != null;
     }
 
+    /**
+     * 获取字段的索引名，字段不需要索引时返回null
+     */
+    static String getIndexName(Field field) {
+        Index index = field.getAnnotation(Index.class);
+        if (index != null) {
+            return TextUtils.isEmpty(index.value()) ? field.getName() : index.value();
+        }
+        return isPrimary(field) ? field.getName() : null;
+    }
+
     private static Object checkData(String type, String data) {
         if (type.equalsIgnoreCase("java.lang.String")) {
             return data;
@@ -73,6 +73,18 @@ public class CheckUtil {
         }
     }
 
+    /**
+     * 检查分页参数是否合法
+     *
+     * @param page 页码，从1开始
+     * @param num  每页数量
+     */
+    public static void checkPageParams(int page, int num) {
+        if (page < 1 || num < 1) {
+            throw new IllegalArgumentException("page和num不能小于1");
+        }
+    }
+
     /**
      * 检测下载链接是否为null
      */
@@ -56,8 +56,6 @@ import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
@@ -687,19 +685,18 @@ public class CommonUtil {
     }
 
     /**
-     * 通过文件名获取下载配置文件路径
+     * 通过文件名获取断点记录文件路径
      *
      * @param fileName 文件名
      */
     public static String getFileConfigPath(boolean isDownload, String fileName) {
         return AriaManager.APP.getFilesDir().getPath() + (isDownload ? AriaManager.DOWNLOAD_TEMP_DIR
-                : AriaManager.UPLOAD_TEMP_DIR) + fileName + ".properties";
+                : AriaManager.UPLOAD_TEMP_DIR) + fileName + ".record";
     }
 
     /**
      * 重命名下载配置文件
      * 如果旧的配置文件名不存在，则使用新的配置文件名新创建一个文件，否则将旧的配置文件重命名为新的位置文件名。
-     * 除了重命名配置文件名外，还会将文件中的记录重命名为新的记录，如果没有记录，则不做处理
      *
      * @param oldName 旧的下载文件名
      * @param newName 新的下载文件名
@@ -711,7 +708,6 @@ public class CommonUtil {
     /**
      * 重命名上传配置文件
      * 如果旧的配置文件名不存在，则使用新的配置文件名新创建一个文件，否则将旧的配置文件重命名为新的位置文件名。
-     * 除了重命名配置文件名外，还会将文件中的记录重命名为新的记录，如果没有记录，则不做处理
      *
      * @param oldName 旧的上传文件名
      * @param newName 新的上传文件名
@@ -723,32 +719,11 @@ public class CommonUtil {
     private static void renameConfig(boolean isDownload, String oldName, String newName) {
         if (oldName.equals(newName)) return;
         File oldFile = new File(getFileConfigPath(isDownload, oldName));
-        File newFile = new File(getFileConfigPath(isDownload, oldName));
+        File newFile = new File(getFileConfigPath(isDownload, newName));
         if (!oldFile.exists()) {
             createFile(newFile.getPath());
         } else {
-            Properties pro = CommonUtil.loadConfig(oldFile);
-            if (!pro.isEmpty()) {
-                Set<Object> keys = pro.keySet();
-                Set<String> newKeys = new LinkedHashSet<>();
-                Set<String> values = new LinkedHashSet<>();
-                for (Object key : keys) {
-                    String oldKey = String.valueOf(key);
-                    if (oldKey.contains(oldName)) {
-                        values.add(pro.getProperty(oldKey));
-                        newKeys.add(oldKey.replace(oldName, newName));
-                    }
-                }
-
-                pro.clear();
-                Iterator<String> next = values.iterator();
-                for (String key : newKeys) {
-                    pro.setProperty(key, next.next());
-                }
-
-                CommonUtil.saveConfig(oldFile, pro);
-            }
-
+            //断点记录按线程id记录，和文件名无关，只需要重命名记录文件
             oldFile.renameTo(newFile);
         }
     }
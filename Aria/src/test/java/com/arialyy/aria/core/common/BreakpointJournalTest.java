@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 断点记录文件的写入和恢复测试
+ */
+public class BreakpointJournalTest {
+    private static final int MB = 1024 * 1024;
+    /**
+     * 文件头和槽位副本的大小，和{@link BreakpointJournal}的文件格式一致
+     */
+    private static final int HEADER_SIZE = 32, COPY_SIZE = 32, SLOT_SIZE = COPY_SIZE * 2;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void replayRecordsAfterReopen() throws Exception {
+        File file = mFolder.newFile("test.aria");
+        BreakpointJournal journal = BreakpointJournal.create(file, 3, 30 * MB);
+        journal.write(0, 5 * MB, 10 * MB, false);
+        journal.write(1, 20 * MB, 20 * MB, true);
+        journal.write(2, 25 * MB, 30 * MB, false);
+        //同一个槽位多次写入，恢复时使用最新的记录
+        journal.write(2, 27 * MB, 30 * MB, false);
+        journal.force();
+
+        BreakpointJournal reopened = BreakpointJournal.open(file);
+        assertNotNull(reopened);
+        assertEquals(3, reopened.getSlotNum());
+        assertEquals(30 * MB, reopened.getFileLength());
+        assertEquals(5 * MB, reopened.getRecord(0));
+        assertEquals(10 * MB, reopened.getEnd(0));
+        assertFalse(reopened.isComplete(0));
+        assertTrue(reopened.isComplete(1));
+        assertEquals(27 * MB, reopened.getRecord(2));
+        assertEquals(30 * MB, reopened.getEnd(2));
+    }
+
+    @Test
+    public void slotWithoutRecordHasNoRecord() throws Exception {
+        File file = mFolder.newFile("test.aria");
+        BreakpointJournal journal = BreakpointJournal.create(file, 2, 10 * MB);
+        journal.write(0, 0, 5 * MB, false);
+
+        assertTrue(journal.hasRecord(0));
+        assertFalse(journal.hasRecord(1));
+        assertEquals(-1, journal.getRecord(1));
+        assertEquals(-1, journal.getEnd(1));
+    }
+
+    @Test
+    public void tornWriteFallsBackToPreviousCopy() throws Exception {
+        File file = mFolder.newFile("test.aria");
+        BreakpointJournal journal = BreakpointJournal.create(file, 1, 10 * MB);
+        journal.write(0, MB, 10 * MB, false);
+        journal.write(0, 2 * MB, 10 * MB, false);
+        journal.force();
+
+        //第二次写入的是第二个副本，破坏它的下载位置，模拟写入过程中进程被杀
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(HEADER_SIZE + COPY_SIZE + 8);
+            raf.writeLong(3 * MB);
+        } finally {
+            raf.close();
+        }
+
+        BreakpointJournal reopened = BreakpointJournal.open(file);
+        assertNotNull(reopened);
+        assertEquals(MB, reopened.getRecord(0));
+    }
+
+    @Test
+    public void replayChunkCrcTable() throws Exception {
+        File file = mFolder.newFile("test.aria");
+        BreakpointJournal journal = BreakpointJournal.create(file, 2, 5 * MB / 2);
+        assertEquals(MB, journal.getChunkSize());
+        assertEquals(3, journal.getChunkNum());
+        journal.writeChunkCrc(0, 0x12345678);
+        journal.writeChunkCrc(2, 0);
+        journal.force();
+
+        BreakpointJournal reopened = BreakpointJournal.open(file);
+        assertNotNull(reopened);
+        assertEquals(3, reopened.getChunkNum());
+        assertTrue(reopened.hasChunkCrc(0));
+        assertEquals(0x12345678, reopened.getChunkCrc(0));
+        assertFalse(reopened.hasChunkCrc(1));
+        //crc为0的分块也能和没有记录的分块区分
+        assertTrue(reopened.hasChunkCrc(2));
+        assertEquals(0, reopened.getChunkCrc(2));
+
+        reopened.clearChunkCrc(0);
+        assertFalse(reopened.hasChunkCrc(0));
+    }
+
+    @Test
+    public void largeFileDoublesChunkSize() throws Exception {
+        File file = mFolder.newFile("test.aria");
+        BreakpointJournal journal = BreakpointJournal.create(file, 1, 32L * 1024 * MB);
+
+        assertEquals(2 * MB, journal.getChunkSize());
+        assertEquals(16 * 1024, journal.getChunkNum());
+    }
+
+    @Test
+    public void openRejectsInvalidFile() throws Exception {
+        File file = mFolder.newFile("test.aria");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[HEADER_SIZE + SLOT_SIZE]);
+        } finally {
+            out.close();
+        }
+
+        assertNull(BreakpointJournal.open(file));
+        assertNull(BreakpointJournal.open(new File(mFolder.getRoot(), "missing.aria")));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 分块crc记录和损坏分块查找测试
+ */
+public class ChunkVerifierTest {
+    private static final int MB = 1024 * 1024;
+    private static final int LENGTH = 5 * MB / 2;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+    private File mFile;
+    private BreakpointJournal mJournal;
+    private ChunkVerifier mVerifier;
+
+    @Before
+    public void setUp() throws Exception {
+        byte[] data = new byte[LENGTH];
+        new Random(7).nextBytes(data);
+        mFile = mFolder.newFile("test.apk");
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        mJournal = BreakpointJournal.create(mFolder.newFile("test.aria"), 2, LENGTH);
+        mVerifier = new ChunkVerifier(mFile, mJournal);
+    }
+
+    @Test
+    public void chunkBounds() {
+        assertEquals(3, mJournal.getChunkNum());
+        assertEquals(0, mVerifier.getChunkStart(0));
+        assertEquals(MB, mVerifier.getChunkEnd(0));
+        assertEquals(2 * MB, mVerifier.getChunkStart(2));
+        //最后一个分块只到文件结尾
+        assertEquals(LENGTH, mVerifier.getChunkEnd(2));
+    }
+
+    @Test
+    public void intactChunksPass() throws Exception {
+        recordAll();
+
+        assertTrue(mVerifier.findCorruptChunks().isEmpty());
+    }
+
+    @Test
+    public void corruptChunkIsFoundAndCleared() throws Exception {
+        recordAll();
+        flipByte(MB + 100);
+
+        assertEquals(Collections.singletonList(1), mVerifier.findCorruptChunks());
+        assertFalse(mJournal.hasChunkCrc(1));
+        assertTrue(mJournal.hasChunkCrc(0));
+        assertTrue(mJournal.hasChunkCrc(2));
+        //记录已经清除，再次校验时不会重复报告
+        assertTrue(mVerifier.findCorruptChunks().isEmpty());
+    }
+
+    @Test
+    public void repairedChunkPassesAfterRecord() throws Exception {
+        recordAll();
+        flipByte(2 * MB + 1);
+        assertEquals(Collections.singletonList(2), mVerifier.findCorruptChunks());
+
+        //模拟重新下载分块
+        flipByte(2 * MB + 1);
+        mVerifier.record(2);
+
+        assertTrue(mJournal.hasChunkCrc(2));
+        assertTrue(mVerifier.findCorruptChunks().isEmpty());
+    }
+
+    @Test
+    public void unrecordedChunksAreNotChecked() throws Exception {
+        mVerifier.record(0);
+        flipByte(MB + 1);
+
+        assertTrue(mVerifier.findCorruptChunks().isEmpty());
+    }
+
+    @Test
+    public void truncatedFileIsCorrupt() throws Exception {
+        recordAll();
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            raf.setLength(LENGTH - 10);
+        } finally {
+            raf.close();
+        }
+
+        assertEquals(Collections.singletonList(2), mVerifier.findCorruptChunks());
+    }
+
+    private void recordAll() throws Exception {
+        for (int i = 0; i < mJournal.getChunkNum(); i++) {
+            mVerifier.record(i);
+        }
+    }
+
+    private void flipByte(long position) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0xff);
+        } finally {
+            raf.close();
+        }
+    }
+}
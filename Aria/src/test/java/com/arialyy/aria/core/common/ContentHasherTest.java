@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 增量md5计算测试
+ */
+public class ContentHasherTest {
+    private static final int LENGTH = 300 * 1024 + 17;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void sequentialUpdatesMatchMd5() throws Exception {
+        byte[] data = randomData();
+        File file = writeFile(data);
+        ContentHasher hasher = ContentHasher.create(file, data.length);
+        assertNotNull(hasher);
+        int position = 0;
+        while (position < data.length) {
+            int len = Math.min(8192, data.length - position);
+            hasher.update(ByteBuffer.wrap(data, position, len), position);
+            position += len;
+        }
+
+        assertTrue(hasher.verify(md5(data)));
+    }
+
+    @Test
+    public void outOfOrderDataIsReadFromFile() throws Exception {
+        byte[] data = randomData();
+        File file = writeFile(data);
+        ContentHasher hasher = ContentHasher.create(file, data.length);
+        assertNotNull(hasher);
+        //只有前一段数据按顺序到达，后面两个线程的数据在完成时从文件中读取
+        hasher.update(ByteBuffer.wrap(data, 0, 1000), 0);
+        hasher.update(ByteBuffer.wrap(data, 200 * 1024, 1000), 200 * 1024);
+
+        assertTrue(hasher.verify(md5(data)));
+    }
+
+    @Test
+    public void resumedTaskHashesWholeFile() throws Exception {
+        byte[] data = randomData();
+        File file = writeFile(data);
+        ContentHasher hasher = ContentHasher.create(file, data.length);
+        assertNotNull(hasher);
+
+        assertTrue(hasher.verify(md5(data).toUpperCase()));
+    }
+
+    @Test
+    public void mismatchedContentFails() throws Exception {
+        byte[] data = randomData();
+        String md5 = md5(data);
+        data[LENGTH / 2] ^= 1;
+        File file = writeFile(data);
+        ContentHasher hasher = ContentHasher.create(file, data.length);
+        assertNotNull(hasher);
+
+        assertFalse(hasher.verify(md5));
+    }
+
+    @Test
+    public void shortFileFails() throws Exception {
+        byte[] data = randomData();
+        File file = writeFile(data);
+        ContentHasher hasher = ContentHasher.create(file, data.length + 1);
+        assertNotNull(hasher);
+
+        assertFalse(hasher.verify(md5(data)));
+    }
+
+    private byte[] randomData() {
+        byte[] data = new byte[LENGTH];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private File writeFile(byte[] data) throws Exception {
+        File file = mFolder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private String md5(byte[] data) throws Exception {
+        byte[] digest = MessageDigest.getInstance("MD5").digest(data);
+        return String.format("%032x", new BigInteger(1, digest));
+    }
+}
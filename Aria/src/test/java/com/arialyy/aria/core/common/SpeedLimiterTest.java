@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 限速令牌桶的预约和突发测试
+ */
+public class SpeedLimiterTest {
+    private static final long SECOND = 1000000000L;
+    private long mNow;
+    private SpeedLimiter.TokenBucket mBucket;
+
+    @Before
+    public void setUp() {
+        mNow = 100 * SECOND;
+        mBucket = new SpeedLimiter.TokenBucket() {
+            @Override
+            long currentTime() {
+                return mNow;
+            }
+        };
+    }
+
+    @Test
+    public void unlimitedNeverWaits() {
+        assertEquals(0, mBucket.reserve(1024 * 1024));
+        assertEquals(0, mBucket.reserve(1024 * 1024));
+    }
+
+    @Test
+    public void reservationsQueueUpAtMaxSpeed() {
+        //1kb/s，1024字节需要1秒
+        mBucket.setMaxSpeed(1);
+        assertEquals(0, mBucket.reserve(1024));
+        assertEquals(SECOND, mBucket.reserve(512));
+        assertEquals(SECOND + SECOND / 2, mBucket.reserve(1024));
+
+        mNow += SECOND;
+        assertEquals(SECOND + SECOND / 2, mBucket.reserve(1024));
+    }
+
+    @Test
+    public void idleBurstIsCapped() {
+        mBucket.setMaxSpeed(1);
+        //空闲很久之后，最多只能突发MAX_BURST对应的数据量
+        mNow += 10 * SpeedLimiter.TokenBucket.MAX_BURST;
+        assertEquals(0, mBucket.reserve(1024));
+        assertEquals(0, mBucket.reserve(1024));
+        assertEquals(SECOND, mBucket.reserve(1024));
+    }
+
+    @Test
+    public void changingSpeedResetsSchedule() {
+        mBucket.setMaxSpeed(1);
+        mBucket.reserve(10 * 1024);
+        mBucket.setMaxSpeed(2);
+        assertEquals(2, mBucket.getMaxSpeed());
+        assertEquals(0, mBucket.reserve(1024));
+        assertEquals(SECOND / 2, mBucket.reserve(1024));
+
+        mBucket.setMaxSpeed(-1);
+        assertEquals(0, mBucket.getMaxSpeed());
+        assertEquals(0, mBucket.reserve(1024));
+    }
+}
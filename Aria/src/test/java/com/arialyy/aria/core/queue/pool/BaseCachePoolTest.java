@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.queue.pool;
+
+import com.arialyy.aria.core.common.TaskPriority;
+import com.arialyy.aria.core.download.DownloadEntity;
+import com.arialyy.aria.core.download.DownloadTaskEntity;
+import com.arialyy.aria.core.inf.AbsTask;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 缓存池的优先级、老化和主机轮转测试
+ */
+public class BaseCachePoolTest {
+    private long mNow;
+    private DownloadCachePool<TestTask> mPool;
+
+    @Before
+    public void setUp() {
+        mNow = 1000;
+        mPool = new DownloadCachePool<TestTask>() {
+            @Override
+            long currentTime() {
+                return mNow;
+            }
+        };
+    }
+
+    @Test
+    public void pollHighestPriorityFirst() {
+        TestTask low = new TestTask("http://a.com/low", TaskPriority.LOW);
+        TestTask normal = new TestTask("http://a.com/normal", TaskPriority.NORMAL);
+        TestTask high = new TestTask("http://a.com/high", TaskPriority.HIGH);
+        mPool.putTask(low);
+        mPool.putTask(normal);
+        mPool.putTask(high);
+
+        assertEquals(high, mPool.pollTask());
+        assertEquals(normal, mPool.pollTask());
+        assertEquals(low, mPool.pollTask());
+        assertNull(mPool.pollTask());
+    }
+
+    @Test
+    public void samePriorityIsFifo() {
+        TestTask first = new TestTask("http://a.com/1", TaskPriority.NORMAL);
+        TestTask second = new TestTask("http://a.com/2", TaskPriority.NORMAL);
+        mPool.putTask(first);
+        mPool.putTask(second);
+
+        assertEquals(first, mPool.pollTask());
+        assertEquals(second, mPool.pollTask());
+    }
+
+    @Test
+    public void waitingTaskAgesPastNewerHigherPriority() {
+        TestTask old = new TestTask("http://a.com/old", TaskPriority.NORMAL);
+        mPool.putTask(old);
+        //等待3个老化间隔后，有效优先级为NORMAL + 3
+        mNow += 3 * BaseCachePool.AGING_INTERVAL;
+        TestTask newer = new TestTask("http://a.com/newer", TaskPriority.NORMAL + 2);
+        mPool.putTask(newer);
+
+        assertEquals(old, mPool.pollTask());
+        assertEquals(newer, mPool.pollTask());
+    }
+
+    @Test
+    public void agingDoesNotPassBeforeInterval() {
+        TestTask old = new TestTask("http://a.com/old", TaskPriority.NORMAL);
+        mPool.putTask(old);
+        mNow += BaseCachePool.AGING_INTERVAL - 1;
+        TestTask newer = new TestTask("http://a.com/newer", TaskPriority.NORMAL + 1);
+        mPool.putTask(newer);
+
+        assertEquals(newer, mPool.pollTask());
+    }
+
+    @Test
+    public void preemptedTaskGoesBackToHeadOfItsPriority() {
+        TestTask waiting = new TestTask("http://a.com/waiting", TaskPriority.NORMAL);
+        mPool.putTask(waiting);
+        mNow += 1000;
+        TestTask victim = new TestTask("http://a.com/victim", TaskPriority.NORMAL);
+        mPool.putTaskToFirst(victim);
+
+        assertEquals(victim, mPool.pollTask());
+        assertEquals(waiting, mPool.pollTask());
+    }
+
+    @Test
+    public void updatePriorityMovesTask() {
+        TestTask a = new TestTask("http://a.com/a", TaskPriority.NORMAL);
+        TestTask b = new TestTask("http://a.com/b", TaskPriority.NORMAL);
+        mPool.putTask(a);
+        mPool.putTask(b);
+        b.getTaskEntity().priority = TaskPriority.HIGH;
+        mPool.updatePriority(b);
+
+        assertEquals(b, mPool.pollTask());
+        assertEquals(a, mPool.pollTask());
+    }
+
+    @Test
+    public void hostsTakeTurnsAtSamePriority() {
+        TestTask a1 = new TestTask("http://a.com/1", TaskPriority.NORMAL);
+        TestTask a2 = new TestTask("http://a.com/2", TaskPriority.NORMAL);
+        TestTask b1 = new TestTask("http://b.com/1", TaskPriority.NORMAL);
+        mPool.putTask(a1);
+        mPool.putTask(a2);
+        mPool.putTask(b1);
+
+        assertEquals(a1, mPool.pollTask());
+        assertEquals(b1, mPool.pollTask());
+        assertEquals(a2, mPool.pollTask());
+    }
+
+    @Test
+    public void hostKeepsTurnWhileQueuedAtOtherPriority() {
+        TestTask a1 = new TestTask("http://a.com/1", TaskPriority.HIGH);
+        TestTask a2 = new TestTask("http://a.com/2", TaskPriority.NORMAL);
+        TestTask b1 = new TestTask("http://b.com/1", TaskPriority.NORMAL);
+        mPool.putTask(a1);
+        mPool.putTask(a2);
+        mPool.putTask(b1);
+
+        assertEquals(a1, mPool.pollTask());
+        assertEquals(b1, mPool.pollTask());
+        assertEquals(a2, mPool.pollTask());
+    }
+
+    @Test
+    public void clearResetsHostTurns() {
+        mPool.putTask(new TestTask("http://a.com/1", TaskPriority.NORMAL));
+        mPool.putTask(new TestTask("http://b.com/1", TaskPriority.NORMAL));
+        mPool.pollTask();
+        mPool.clear();
+
+        TestTask a2 = new TestTask("http://a.com/2", TaskPriority.NORMAL);
+        TestTask b2 = new TestTask("http://b.com/2", TaskPriority.NORMAL);
+        mPool.putTask(a2);
+        mPool.putTask(b2);
+        assertEquals(a2, mPool.pollTask());
+        assertEquals(b2, mPool.pollTask());
+    }
+
+    @Test
+    public void removedTaskIsNotPolled() {
+        TestTask a = new TestTask("http://a.com/a", TaskPriority.HIGH);
+        TestTask b = new TestTask("http://a.com/b", TaskPriority.NORMAL);
+        mPool.putTask(a);
+        mPool.putTask(b);
+        mPool.removeTask(a);
+
+        assertEquals(1, mPool.size());
+        assertEquals(b, mPool.pollTask());
+        assertEquals(0, mPool.size());
+    }
+
+    /**
+     * 只用于缓存池排序的任务
+     */
+    private static class TestTask extends AbsTask<DownloadTaskEntity> {
+        private final String mKey;
+
+        TestTask(String url, int priority) {
+            mKey = url;
+            DownloadTaskEntity taskEntity = new DownloadTaskEntity();
+            taskEntity.entity = new DownloadEntity();
+            taskEntity.entity.setUrl(url);
+            taskEntity.priority = priority;
+            mTaskEntity = taskEntity;
+        }
+
+        @Override
+        public String getKey() {
+            return mKey;
+        }
+
+        @Override
+        public boolean isRunning() {
+            return false;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}
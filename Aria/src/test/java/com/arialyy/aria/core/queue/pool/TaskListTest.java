@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.queue.pool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 任务链表的顺序、去重和移除测试
+ */
+public class TaskListTest {
+    private TaskList<String> mList;
+
+    @Before
+    public void setUp() {
+        mList = new TaskList<>();
+    }
+
+    @Test
+    public void addLastKeepsInsertionOrder() {
+        mList.addLast("a", "A");
+        mList.addLast("b", "B");
+        mList.addLast("c", "C");
+
+        assertEquals(3, mList.size());
+        assertEquals("a", mList.peekFirstKey());
+        assertEquals("A", mList.pollFirst());
+        assertEquals("B", mList.pollFirst());
+        assertEquals("C", mList.pollFirst());
+        assertTrue(mList.isEmpty());
+        assertNull(mList.pollFirst());
+        assertNull(mList.peekFirstKey());
+    }
+
+    @Test
+    public void addLastRejectsDuplicateKey() {
+        assertTrue(mList.addLast("a", "A"));
+        assertFalse(mList.addLast("a", "A2"));
+
+        assertEquals(1, mList.size());
+        assertEquals("A", mList.get("a"));
+    }
+
+    @Test
+    public void addFirstMovesExistingToHead() {
+        mList.addLast("a", "A");
+        mList.addLast("b", "B");
+        mList.addLast("c", "C");
+        mList.addFirst("c", "C");
+
+        assertEquals(3, mList.size());
+        assertEquals("C", mList.pollFirst());
+        assertEquals("A", mList.pollFirst());
+        assertEquals("B", mList.pollFirst());
+    }
+
+    @Test
+    public void addFirstInsertsNewAtHead() {
+        mList.addLast("a", "A");
+        mList.addFirst("b", "B");
+
+        assertEquals("B", mList.peekFirst());
+        assertTrue(mList.contains("b"));
+        assertEquals(2, mList.size());
+    }
+
+    @Test
+    public void removeHeadMiddleAndTail() {
+        mList.addLast("a", "A");
+        mList.addLast("b", "B");
+        mList.addLast("c", "C");
+        mList.addLast("d", "D");
+
+        assertEquals("B", mList.remove("b"));
+        assertEquals("A", mList.remove("a"));
+        assertEquals("D", mList.remove("d"));
+        assertNull(mList.remove("x"));
+
+        assertEquals(1, mList.size());
+        assertFalse(mList.contains("b"));
+        assertEquals("C", mList.pollFirst());
+        assertTrue(mList.isEmpty());
+
+        //移除后仍然可以正常追加
+        mList.addLast("e", "E");
+        mList.addFirst("f", "F");
+        assertEquals("F", mList.pollFirst());
+        assertEquals("E", mList.pollFirst());
+    }
+
+    @Test
+    public void clearRemovesAll() {
+        mList.addLast("a", "A");
+        mList.addLast("b", "B");
+        mList.clear();
+
+        assertTrue(mList.isEmpty());
+        assertFalse(mList.contains("a"));
+        assertNull(mList.peekFirst());
+        assertTrue(mList.addLast("a", "A"));
+        assertEquals("A", mList.pollFirst());
+    }
+}
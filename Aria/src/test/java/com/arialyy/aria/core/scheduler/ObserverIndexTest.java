@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.scheduler;
+
+import com.arialyy.aria.core.inf.AbsEntity;
+import com.arialyy.aria.core.inf.AbsTask;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 观察者索引的注册、移除和按任务key查找测试
+ */
+public class ObserverIndexTest {
+    private ObserverIndex<AbsTask> mIndex;
+
+    @Before
+    public void setUp() {
+        mIndex = new ObserverIndex<>();
+    }
+
+    @Test
+    public void listenerWithoutKeysIsGlobal() {
+        TestListener global = new TestListener(null);
+        mIndex.put("global", global);
+
+        assertSame(global, mIndex.get("global"));
+        assertSame(global, mIndex.getGlobalObservers().get("global"));
+        assertTrue(mIndex.getKeyObservers("http://a.com/1").isEmpty());
+    }
+
+    @Test
+    public void listenerIsIndexedByEachKey() {
+        TestListener a = new TestListener(keys("http://a.com/1", "http://a.com/2"));
+        TestListener b = new TestListener(keys("http://a.com/2"));
+        mIndex.put("a", a);
+        mIndex.put("b", b);
+
+        assertTrue(mIndex.getGlobalObservers().isEmpty());
+        Map<String, AbsSchedulerListener<AbsTask, AbsEntity>> first =
+                mIndex.getKeyObservers("http://a.com/1");
+        assertEquals(1, first.size());
+        assertSame(a, first.get("a"));
+        Map<String, AbsSchedulerListener<AbsTask, AbsEntity>> second =
+                mIndex.getKeyObservers("http://a.com/2");
+        assertEquals(2, second.size());
+        assertSame(b, second.get("b"));
+        assertTrue(mIndex.getKeyObservers("http://a.com/3").isEmpty());
+    }
+
+    @Test
+    public void removeDropsListenerFromIndex() {
+        TestListener a = new TestListener(keys("http://a.com/1"));
+        TestListener global = new TestListener(null);
+        mIndex.put("a", a);
+        mIndex.put("global", global);
+        mIndex.remove("a");
+        mIndex.remove("missing");
+
+        assertNull(mIndex.get("a"));
+        assertTrue(mIndex.getKeyObservers("http://a.com/1").isEmpty());
+        assertEquals(1, mIndex.getGlobalObservers().size());
+
+        mIndex.remove("global");
+        assertTrue(mIndex.getGlobalObservers().isEmpty());
+    }
+
+    @Test
+    public void putReplacesExistingListener() {
+        mIndex.put("a", new TestListener(keys("http://a.com/1")));
+        TestListener replacement = new TestListener(keys("http://a.com/2"));
+        mIndex.put("a", replacement);
+
+        assertTrue(mIndex.getKeyObservers("http://a.com/1").isEmpty());
+        assertSame(replacement, mIndex.getKeyObservers("http://a.com/2").get("a"));
+    }
+
+    @Test
+    public void snapshotIsNotChangedByLaterRegistration() {
+        mIndex.put("a", new TestListener(null));
+        Map<String, AbsSchedulerListener<AbsTask, AbsEntity>> snapshot =
+                mIndex.getGlobalObservers();
+        mIndex.put("b", new TestListener(null));
+
+        assertEquals(1, snapshot.size());
+        assertEquals(2, mIndex.getGlobalObservers().size());
+    }
+
+    private static Set<String> keys(String... keys) {
+        return new HashSet<>(Arrays.asList(keys));
+    }
+
+    private static class TestListener extends AbsSchedulerListener<AbsTask, AbsEntity> {
+        private final Set<String> mKeys;
+
+        TestListener(Set<String> keys) {
+            mKeys = keys;
+        }
+
+        @Override
+        public Set<String> getTaskKeys() {
+            return mKeys;
+        }
+    }
+}
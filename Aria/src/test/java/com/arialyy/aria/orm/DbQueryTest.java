@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.orm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 查询语句和参数的生成测试
+ */
+public class DbQueryTest {
+
+    @Test
+    public void selectAllByRowId() {
+        DbQuery<QueryEntity> query = new DbQuery<>(QueryEntity.class);
+
+        assertEquals("SELECT rowid, * FROM QueryEntity ORDER BY rowid ASC", query.getSql());
+        assertEquals(0, query.getArgs().length);
+    }
+
+    @Test
+    public void columnsAlwaysIncludeRowIdAndPrimary() {
+        DbQuery<QueryEntity> query = new DbQuery<>(QueryEntity.class)
+                .columns("name", "url")
+                .limit(10)
+                .offset(20);
+
+        assertEquals("SELECT rowid, url, name FROM QueryEntity ORDER BY rowid ASC LIMIT 10 OFFSET 20",
+                query.getSql());
+    }
+
+    @Test
+    public void whereAndOrder() {
+        DbQuery<QueryEntity> query = new DbQuery<>(QueryEntity.class)
+                .where("name=?", "a")
+                .orderByDesc("completeTime");
+
+        assertEquals("SELECT rowid, * FROM QueryEntity WHERE (name=?) ORDER BY completeTime DESC, rowid DESC",
+                query.getSql());
+        assertArrayEquals(new String[]{"a"}, query.getArgs());
+    }
+
+    @Test
+    public void afterByRowId() {
+        DbQuery<QueryEntity> query = new DbQuery<>(QueryEntity.class)
+                .where("name=?", "a")
+                .after(entity(7, 100L));
+
+        assertEquals("SELECT rowid, * FROM QueryEntity WHERE (name=?) AND rowid > ? ORDER BY rowid ASC",
+                query.getSql());
+        assertArrayEquals(new String[]{"a", "7"}, query.getArgs());
+    }
+
+    @Test
+    public void afterByOrderColumnAsc() {
+        DbQuery<QueryEntity> query = new DbQuery<>(QueryEntity.class)
+                .orderBy("completeTime")
+                .after(entity(7, 100L));
+
+        assertEquals("SELECT rowid, * FROM QueryEntity WHERE (completeTime > ? OR (completeTime = ? AND rowid > ?))"
+                + " ORDER BY completeTime ASC, rowid ASC", query.getSql());
+        assertArrayEquals(new String[]{"100", "100", "7"}, query.getArgs());
+    }
+
+    @Test
+    public void afterByOrderColumnDescIncludesNullRows() {
+        DbQuery<QueryEntity> query = new DbQuery<>(QueryEntity.class)
+                .orderByDesc("completeTime")
+                .after(entity(7, 100L));
+
+        assertEquals("SELECT rowid, * FROM QueryEntity WHERE (completeTime < ? OR (completeTime = ? AND rowid < ?)"
+                + " OR completeTime IS NULL) ORDER BY completeTime DESC, rowid DESC", query.getSql());
+        assertArrayEquals(new String[]{"100", "100", "7"}, query.getArgs());
+    }
+
+    @Test
+    public void afterNullValueAsc() {
+        DbQuery<QueryEntity> query = new DbQuery<>(QueryEntity.class)
+                .orderBy("completeTime")
+                .after(entity(7, null));
+
+        assertEquals("SELECT rowid, * FROM QueryEntity WHERE ((completeTime IS NULL AND rowid > ?)"
+                + " OR completeTime IS NOT NULL) ORDER BY completeTime ASC, rowid ASC", query.getSql());
+        assertArrayEquals(new String[]{"7"}, query.getArgs());
+    }
+
+    @Test
+    public void afterNullValueDesc() {
+        DbQuery<QueryEntity> query = new DbQuery<>(QueryEntity.class)
+                .orderByDesc("completeTime")
+                .after(entity(7, null));
+
+        assertEquals("SELECT rowid, * FROM QueryEntity WHERE (completeTime IS NULL AND rowid < ?)"
+                + " ORDER BY completeTime DESC, rowid DESC", query.getSql());
+        assertArrayEquals(new String[]{"7"}, query.getArgs());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownOrderColumn() {
+        new DbQuery<>(QueryEntity.class)
+                .orderBy("missing")
+                .after(entity(7, 100L))
+                .getArgs();
+    }
+
+    private static QueryEntity entity(int rowId, Long completeTime) {
+        QueryEntity entity = new QueryEntity();
+        entity.rowID = rowId;
+        entity.completeTime = completeTime;
+        return entity;
+    }
+}
+
+/**
+ * 测试用的实体，类名即表名
+ */
+class QueryEntity extends DbEntity {
+    @Primary
+    String url;
+    String name;
+    Long completeTime;
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.compiler;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * 数据库映射文件，只处理字符串和基本类型的字段，其它字段、无法访问的字段由反射处理
+ *
+ * <pre>
+ *   <code>
+ * public final class DownloadEntity$$DbMapper implements IDbMapper<DownloadEntity> {
+ *   private static final String[] COLUMNS = {"downloadPath", "fileSize"};
+ *
+ *   public String[] getColumns() {
+ *     return COLUMNS;
+ *   }
+ *
+ *   public DownloadEntity newInstance() {
+ *     return new DownloadEntity();
+ *   }
+ *
+ *   public void readCursor(DownloadEntity entity, Cursor cursor) {
+ *     int index;
+ *     index = cursor.getColumnIndex("downloadPath");
+ *     if (index != -1) {
+ *       entity.setDownloadPath(cursor.getString(index));
+ *     }
+ *     index = cursor.getColumnIndex("fileSize");
+ *     if (index != -1) {
+ *       entity.setFileSize(cursor.getLong(index));
+ *     }
+ *   }
+ *
+ *   public void getValues(DownloadEntity entity, String[] values, String nullValue) {
+ *     String str;
+ *     str = entity.getDownloadPath();
+ *     values[0] = str == null ? nullValue : str;
+ *     values[1] = String.valueOf(entity.getFileSize());
+ *   }
+ * }
+ *   </code>
+ * </pre>
+ */
+final class DbMapperFiler {
+  static final String MAPPER_SUFFIX = "$$DbMapper";
+  private static final String ORM_PACKAGE = "com.arialyy.aria.orm";
+  private static final String DB_ENTITY = ORM_PACKAGE + ".DbEntity";
+  private static final String MAPPER = ORM_PACKAGE + ".IDbMapper";
+  private static final String IGNORE = ORM_PACKAGE + ".Ignore";
+  private static final String ONE_TO_ONE = ORM_PACKAGE + ".OneToOne";
+  private static final String ONE_TO_MANY = ORM_PACKAGE + ".OneToMany";
+  /**
+   * 和CommonUtil.getAllFields()保持一致，只读取实体类和它的两级父类的字段
+   */
+  private static final int FIELD_LEVEL = 3;
+
+  private Filer mFiler;
+  private Elements mElements;
+  private Types mTypes;
+  private TypeElement mDbEntity;
+  private Set<String> mCreated = new HashSet<>();
+
+  DbMapperFiler(Filer filer, Elements elements, Types types) {
+    mFiler = filer;
+    mElements = elements;
+    mTypes = types;
+    mDbEntity = elements.getTypeElement(DB_ENTITY);
+  }
+
+  /**
+   * 当前模块是否依赖了Aria的数据库
+   */
+  boolean isAvailable() {
+    return mDbEntity != null && mElements.getTypeElement(MAPPER) != null;
+  }
+
+  /**
+   * 如果是可以实例化的数据库实体，则创建映射文件
+   */
+  void createMapperFile(TypeElement type) throws IOException {
+    if (!isEntity(type)) {
+      return;
+    }
+    String pkg = mElements.getPackageOf(type).getQualifiedName().toString();
+    String className = type.getSimpleName().toString();
+    if (!mCreated.add(pkg + "." + className)) {
+      return;
+    }
+    List<Column> columns = getColumns(type, pkg);
+    if (columns.isEmpty()) {
+      return;
+    }
+    JavaFile jf = JavaFile.builder(pkg, createMapperClass(ClassName.get(type), columns)).build();
+    if (ProxyConstance.DEBUG) {
+      jf.writeTo(System.out);
+    } else {
+      jf.writeTo(mFiler);
+    }
+  }
+
+  private TypeSpec createMapperClass(ClassName entity, List<Column> columns) {
+    ClassName cursor = ClassName.get("android.database", "Cursor");
+    TypeSpec.Builder builder =
+        TypeSpec.classBuilder(entity.simpleName() + MAPPER_SUFFIX)
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addSuperinterface(
+                ParameterizedTypeName.get(ClassName.get(ORM_PACKAGE, "IDbMapper"), entity))
+            .addJavadoc("该文件为Aria自动生成的数据库映射文件，请不要修改该文件的任何代码！\n");
+
+    //字段名
+    CodeBlock.Builder names = CodeBlock.builder().add("{");
+    for (int i = 0; i < columns.size(); i++) {
+      names.add(i == 0 ? "$S" : ", $S", columns.get(i).name);
+    }
+    names.add("}");
+    builder.addField(FieldSpec.builder(ArrayTypeName.of(String.class), "COLUMNS")
+        .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+        .initializer(names.build())
+        .build());
+
+    builder.addMethod(MethodSpec.methodBuilder("getColumns")
+        .addModifiers(Modifier.PUBLIC)
+        .addAnnotation(Override.class)
+        .returns(ArrayTypeName.of(String.class))
+        .addStatement("return COLUMNS")
+        .build());
+
+    builder.addMethod(MethodSpec.methodBuilder("newInstance")
+        .addModifiers(Modifier.PUBLIC)
+        .addAnnotation(Override.class)
+        .returns(entity)
+        .addStatement("return new $T()", entity)
+        .build());
+
+    //游标转实体
+    MethodSpec.Builder read = MethodSpec.methodBuilder("readCursor")
+        .addModifiers(Modifier.PUBLIC)
+        .addAnnotation(Override.class)
+        .addParameter(entity, "entity")
+        .addParameter(cursor, "cursor")
+        .addStatement("int index");
+    for (Column column : columns) {
+      read.addStatement("index = cursor.getColumnIndex($S)", column.name);
+      read.beginControlFlow("if (index != -1)");
+      String value = column.getCursorValue();
+      if (column.setter != null) {
+        read.addStatement("entity.$L(" + value + ")", column.setter);
+      } else {
+        read.addStatement("entity.$L = " + value, column.name);
+      }
+      read.endControlFlow();
+    }
+    builder.addMethod(read.build());
+
+    //实体转数据库的值，格式和反射保存的格式一致
+    MethodSpec.Builder write = MethodSpec.methodBuilder("getValues")
+        .addModifiers(Modifier.PUBLIC)
+        .addAnnotation(Override.class)
+        .addParameter(entity, "entity")
+        .addParameter(ArrayTypeName.of(String.class), "values")
+        .addParameter(String.class, "nullValue")
+        .addStatement("String str");
+    for (int i = 0; i < columns.size(); i++) {
+      Column column = columns.get(i);
+      String get = column.getter != null ? "entity." + column.getter + "()"
+          : "entity." + column.name;
+      if (column.isString) {
+        write.addStatement("str = " + get);
+        write.addStatement("values[$L] = str == null ? nullValue : str", i);
+      } else {
+        write.addStatement("values[$L] = String.valueOf(" + get + ")", i);
+      }
+    }
+    builder.addMethod(write.build());
+    return builder.build();
+  }
+
+  /**
+   * 可以实例化的数据库实体
+   */
+  private boolean isEntity(TypeElement type) {
+    if (type.getKind() != ElementKind.CLASS
+        || type.getModifiers().contains(Modifier.ABSTRACT)
+        || !type.getModifiers().contains(Modifier.PUBLIC)
+        || !type.getTypeParameters().isEmpty()
+        || type.getEnclosingElement().getKind() != ElementKind.PACKAGE
+        || type.equals(mDbEntity)) {
+      return false;
+    }
+    if (!mTypes.isSubtype(mTypes.erasure(type.asType()), mTypes.erasure(mDbEntity.asType()))) {
+      return false;
+    }
+    for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (constructor.getParameters().isEmpty() && !constructor.getModifiers()
+          .contains(Modifier.PRIVATE)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 获取可以生成代码的字段
+   */
+  private List<Column> getColumns(TypeElement type, String pkg) {
+    List<Column> columns = new ArrayList<>();
+    List<? extends Element> members = mElements.getAllMembers(type);
+    TypeElement level = type;
+    for (int i = 0; i < FIELD_LEVEL && level != null; i++) {
+      for (VariableElement field : ElementFilter.fieldsIn(level.getEnclosedElements())) {
+        if (ignoreField(field)) continue;
+        TypeMirror fieldType = field.asType();
+        boolean isString = fieldType.getKind() == TypeKind.DECLARED && ((TypeElement) ((DeclaredType) fieldType)
+            .asElement()).getQualifiedName().contentEquals("java.lang.String");
+        if (!isString && !isPrimitive(fieldType.getKind())) continue;
+        Column column = new Column();
+        column.name = field.getSimpleName().toString();
+        column.kind = fieldType.getKind();
+        column.isString = isString;
+        if (!isAccessible(field, pkg)) {
+          column.getter = findGetter(members, column.name, fieldType, pkg);
+          column.setter = findSetter(members, column.name, fieldType, pkg);
+          if (column.getter == null || column.setter == null) continue;
+        }
+        columns.add(column);
+      }
+      level = getSuperclass(level);
+    }
+    return columns;
+  }
+
+  private TypeElement getSuperclass(TypeElement type) {
+    TypeMirror superType = type.getSuperclass();
+    if (superType.getKind() != TypeKind.DECLARED) {
+      return null;
+    }
+    return (TypeElement) ((DeclaredType) superType).asElement();
+  }
+
+  /**
+   * 和SqlUtil.ignoreField()保持一致
+   */
+  private boolean ignoreField(VariableElement field) {
+    Set<Modifier> modifiers = field.getModifiers();
+    if (modifiers.contains(Modifier.STATIC)
+        || modifiers.contains(Modifier.FINAL)
+        || field.getSimpleName().contentEquals("rowID")) {
+      return true;
+    }
+    for (AnnotationMirror mirror : field.getAnnotationMirrors()) {
+      String name =
+          ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+      if (name.equals(ONE_TO_ONE) || name.equals(ONE_TO_MANY)) {
+        return true;
+      }
+      if (name.equals(IGNORE)) {
+        boolean ignore = true;
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror
+            .getElementValues()
+            .entrySet()) {
+          if (entry.getKey().getSimpleName().contentEquals("value")) {
+            ignore = (Boolean) entry.getValue().getValue();
+          }
+        }
+        if (ignore) return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isPrimitive(TypeKind kind) {
+    return kind == TypeKind.INT
+        || kind == TypeKind.LONG
+        || kind == TypeKind.FLOAT
+        || kind == TypeKind.DOUBLE
+        || kind == TypeKind.BOOLEAN;
+  }
+
+  /**
+   * 映射类和实体在同一个包中，能否直接访问该成员
+   */
+  private boolean isAccessible(Element element, String pkg) {
+    Set<Modifier> modifiers = element.getModifiers();
+    if (modifiers.contains(Modifier.PUBLIC)) {
+      return true;
+    }
+    return !modifiers.contains(Modifier.PRIVATE)
+        && mElements.getPackageOf(element).getQualifiedName().contentEquals(pkg);
+  }
+
+  private String findGetter(List<? extends Element> members, String name, TypeMirror type,
+      String pkg) {
+    List<String> names = new ArrayList<>();
+    names.add("get" + capitalize(name));
+    if (type.getKind() == TypeKind.BOOLEAN) {
+      names.add("is" + capitalize(name));
+      if (isBooleanName(name)) names.add(name);
+    }
+    for (ExecutableElement method : ElementFilter.methodsIn(members)) {
+      if (names.contains(method.getSimpleName().toString())
+          && method.getParameters().isEmpty()
+          && !method.getModifiers().contains(Modifier.STATIC)
+          && mTypes.isSameType(method.getReturnType(), type)
+          && isAccessible(method, pkg)) {
+        return method.getSimpleName().toString();
+      }
+    }
+    return null;
+  }
+
+  private String findSetter(List<? extends Element> members, String name, TypeMirror type,
+      String pkg) {
+    List<String> names = new ArrayList<>();
+    names.add("set" + capitalize(name));
+    if (type.getKind() == TypeKind.BOOLEAN && isBooleanName(name)) {
+      names.add("set" + name.substring(2));
+    }
+    for (ExecutableElement method : ElementFilter.methodsIn(members)) {
+      if (names.contains(method.getSimpleName().toString())
+          && method.getParameters().size() == 1
+          && !method.getModifiers().contains(Modifier.STATIC)
+          && mTypes.isSameType(method.getParameters().get(0).asType(), type)
+          && isAccessible(method, pkg)) {
+        return method.getSimpleName().toString();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * isXxx 形式的boolean字段名
+   */
+  private boolean isBooleanName(String name) {
+    return name.length() > 2 && name.startsWith("is") && Character.isUpperCase(name.charAt(2));
+  }
+
+  private String capitalize(String name) {
+    return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+  }
+
+  private static class Column {
+    String name;
+    TypeKind kind;
+    boolean isString;
+    String getter, setter;
+
+    /**
+     * 从游标读取值的代码，和SqlHelper.newInstanceEntity()保持一致
+     */
+    String getCursorValue() {
+      if (isString) return "cursor.getString(index)";
+      switch (kind) {
+        case INT:
+          return "cursor.getInt(index)";
+        case LONG:
+          return "cursor.getLong(index)";
+        case FLOAT:
+          return "cursor.getFloat(index)";
+        case DOUBLE:
+          return "cursor.getDouble(index)";
+        default:
+          return "!cursor.getString(index).equalsIgnoreCase(\"false\")";
+      }
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.compiler;
+
+import com.google.auto.service.AutoService;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * 数据库实体扫描器，为所有{@code DbEntity}的子类生成不使用反射的映射类。
+ * 实体类不需要注解，所以扫描器需要处理所有类，并且不占用任何注解
+ */
+@AutoService(Processor.class) public class DbMapperProcessor extends AbstractProcessor {
+  private DbMapperFiler mFiler;
+
+  @Override public synchronized void init(ProcessingEnvironment processingEnv) {
+    super.init(processingEnv);
+    PrintLog.init(processingEnv.getMessager());
+    mFiler = new DbMapperFiler(processingEnv.getFiler(), processingEnv.getElementUtils(),
+        processingEnv.getTypeUtils());
+  }
+
+  @Override public Set<String> getSupportedAnnotationTypes() {
+    return Collections.singleton("*");
+  }
+
+  @Override public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    if (!mFiler.isAvailable()) {
+      return false;
+    }
+    for (Element element : roundEnv.getRootElements()) {
+      if (element instanceof TypeElement) {
+        try {
+          mFiler.createMapperFile((TypeElement) element);
+        } catch (IOException e) {
+          PrintLog.getInstance().warning("创建数据库映射文件失败：" + e.getMessage());
+        }
+      }
+    }
+    return false;
+  }
+}
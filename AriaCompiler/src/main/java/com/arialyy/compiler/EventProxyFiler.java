@@ -161,6 +161,12 @@ final class EventProxyFiler {
         "keyMapping").addModifiers(Modifier.PRIVATE).initializer("new $T()", HashMap.class).build();
     builder.addField(mappingField);
 
+    //添加观察者关心的任务key，供调度器建立索引
+    FieldSpec taskKeysField = FieldSpec.builder(
+        ParameterizedTypeName.get(ClassName.get(Set.class), ClassName.get(String.class)),
+        "taskKeys").addModifiers(Modifier.PRIVATE).build();
+    builder.addField(taskKeysField);
+
     //添加注解方法
     for (TaskEnum te : entity.methods.keySet()) {
       Map<Class<? extends Annotation>, String> temp = entity.methods.get(te);
@@ -189,6 +195,13 @@ final class EventProxyFiler {
       sb.append("keyMapping.put(\"").append(methodName).append("\", ").append("set);\n");
       cb.add(sb.toString(), ClassName.get(HashSet.class));
     }
+    //所有注解都填写了地址时，观察者只关心这些地址的任务，否则关心所有任务
+    if (isAllMethodFiltered(entity)) {
+      cb.add("taskKeys = new $T();\n", ClassName.get(HashSet.class));
+      cb.add("for (Set<String> keys : keyMapping.values()) {\n");
+      cb.add("\ttaskKeys.addAll(keys);\n");
+      cb.add("}\n");
+    }
     MethodSpec structure =
         MethodSpec.constructorBuilder().addModifiers(Modifier.PUBLIC).addCode(cb.build()).build();
     builder.addMethod(structure);
@@ -203,6 +216,13 @@ final class EventProxyFiler {
         .addAnnotation(Override.class)
         .addCode("this.obj = (" + entity.className + ")obj;\n")
         .build();
+    MethodSpec taskKeys = MethodSpec.methodBuilder(ProxyConstance.GET_TASK_KEYS)
+        .addModifiers(Modifier.PUBLIC)
+        .returns(ParameterizedTypeName.get(ClassName.get(Set.class), ClassName.get(String.class)))
+        .addAnnotation(Override.class)
+        .addCode("return taskKeys;\n")
+        .build();
+    builder.addMethod(taskKeys);
     builder.addJavadoc("该文件为Aria自动生成的代理文件，请不要修改该文件的任何代码！\n");
 
     //创建父类参数
@@ -220,6 +240,26 @@ final class EventProxyFiler {
     return builder.build();
   }
 
+  /**
+   * 所有注解方法是否都填写了地址，任务组注解中的地址不是任务的key，不能用于建立索引
+   */
+  private boolean isAllMethodFiltered(ProxyClassParam entity) {
+    for (TaskEnum te : entity.methods.keySet()) {
+      if (te != TaskEnum.DOWNLOAD && te != TaskEnum.UPLOAD) {
+        return false;
+      }
+      Map<Class<? extends Annotation>, String> methods = entity.methods.get(te);
+      if (methods == null) continue;
+      for (String methodName : methods.values()) {
+        Set<String> keys = entity.keyMappings.get(methodName);
+        if (keys == null || keys.isEmpty()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
   private void createFile(JavaFile jf) throws IOException {
     if (ProxyConstance.DEBUG) {
       // 如果需要在控制台打印生成的文件，则去掉下面的注释
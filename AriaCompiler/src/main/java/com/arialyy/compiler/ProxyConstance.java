@@ -25,6 +25,10 @@ interface ProxyConstance {
    * 设置观察者的方法
    */
   String SET_LISTENER = "setListener";
+  /**
+   * 获取观察者关心的任务key的方法
+   */
+  String GET_TASK_KEYS = "getTaskKeys";
 
   /**
    * 代理配置类
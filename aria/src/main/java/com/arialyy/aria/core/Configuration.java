@@ -17,7 +17,9 @@ package com.arialyy.aria.core;
 
 import android.text.TextUtils;
 
+import com.arialyy.aria.core.common.HostLimiter;
 import com.arialyy.aria.core.common.QueueMod;
+import com.arialyy.aria.core.common.SpeedLimiter;
 import com.arialyy.aria.core.queue.DownloadTaskQueue;
 import com.arialyy.aria.core.queue.UploadTaskQueue;
 import com.arialyy.aria.util.CommonUtil;
@@ -63,6 +65,16 @@ class Configuration {
          */
         int connectTimeOut = 5000;
 
+        /**
+         * 队列的总速度，单位为kb/s，默认为0，表示不限速
+         */
+        int maxSpeed = 0;
+
+        /**
+         * 同一个主机同时执行的最大任务数，下载和上传队列分别计数，默认为0，表示不限制
+         */
+        int maxTaskNumPerHost = 0;
+
         /**
          * 执行队列类型
          *
@@ -70,6 +82,31 @@ class Configuration {
          */
         String queueMod = "wait";
 
+        public int getMaxSpeed() {
+            return maxSpeed;
+        }
+
+        public BaseConfig setMaxSpeed(int maxSpeed) {
+            this.maxSpeed = maxSpeed < 0 ? 0 : maxSpeed;
+            saveKey("maxSpeed", this.maxSpeed + "");
+            if (this instanceof DownloadConfig) {
+                SpeedLimiter.getInstance().setDownloadMaxSpeed(this.maxSpeed);
+            } else {
+                SpeedLimiter.getInstance().setUploadMaxSpeed(this.maxSpeed);
+            }
+            return this;
+        }
+
+        public int getMaxTaskNumPerHost() {
+            return maxTaskNumPerHost;
+        }
+
+        public BaseConfig setMaxTaskNumPerHost(int maxTaskNumPerHost) {
+            this.maxTaskNumPerHost = maxTaskNumPerHost < 0 ? 0 : maxTaskNumPerHost;
+            saveKey("maxTaskNumPerHost", this.maxTaskNumPerHost + "");
+            return this;
+        }
+
         public String getQueueMod() {
             return queueMod;
         }
@@ -225,7 +262,14 @@ class Configuration {
          * 下载线程数，下载线程数不能小于1
          */
         int threadNum = 3;
-
+        /**
+         * 所有下载和上传任务的总速度，单位为kb/s，默认为0，表示不限速
+         */
+        int globalMaxSpeed = 0;
+        /**
+         * 同一个主机同时打开的最大连接数，所有下载任务的线程共用，默认为0，表示不限制
+         */
+        int maxConnectionsPerHost = 0;
 
         private DownloadConfig() {
             loadConfig();
@@ -292,6 +336,28 @@ class Configuration {
         public int getThreadNum() {
             return threadNum;
         }
+
+        public int getGlobalMaxSpeed() {
+            return globalMaxSpeed;
+        }
+
+        public DownloadConfig setGlobalMaxSpeed(int globalMaxSpeed) {
+            this.globalMaxSpeed = globalMaxSpeed < 0 ? 0 : globalMaxSpeed;
+            saveKey("globalMaxSpeed", this.globalMaxSpeed + "");
+            SpeedLimiter.getInstance().setGlobalMaxSpeed(this.globalMaxSpeed);
+            return this;
+        }
+
+        public int getMaxConnectionsPerHost() {
+            return maxConnectionsPerHost;
+        }
+
+        public DownloadConfig setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+            this.maxConnectionsPerHost = maxConnectionsPerHost < 0 ? 0 : maxConnectionsPerHost;
+            saveKey("maxConnectionsPerHost", this.maxConnectionsPerHost + "");
+            HostLimiter.getInstance().setMaxConnectionsPerHost(this.maxConnectionsPerHost);
+            return this;
+        }
     }
 
     /**